@@ -0,0 +1,36 @@
+package org.lamikvah.website;
+
+import org.lamikvah.website.service.MikvahUserService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+import com.auth0.exception.Auth0Exception;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The admin check for paths that aren't served by our controllers, such as the actuator
+ * endpoints, for use in {@link SecurityConfiguration} as {@code @adminAccess.isAdmin(authentication)}.
+ */
+@Component
+@Slf4j
+public class AdminAccess {
+
+    @Autowired @Lazy private MikvahUserService mikvahUserService;
+
+    public boolean isAdmin(Authentication authentication) {
+
+        if (authentication == null || !authentication.isAuthenticated()) {
+            return false;
+        }
+        try {
+            return mikvahUserService.getUser(authentication.getName()).isAdmin();
+        } catch (Auth0Exception e) {
+            log.error("Failed to get user {} from Auth0 to check if they're an admin.", authentication.getName(), e);
+            return false;
+        }
+    }
+
+}
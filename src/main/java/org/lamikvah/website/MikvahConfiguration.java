@@ -1,5 +1,9 @@
 package org.lamikvah.website;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.validation.constraints.NotNull;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -22,6 +26,13 @@ public class MikvahConfiguration {
 
     private int appointmentCost;
 
+    private int appointmentHoldMinutes = 10;
+
+    /**
+     * How many days ahead appointments can be booked
+     */
+    private int bookingHorizonDays = 14;
+
     private String currency;
 
     private String timeZone;
@@ -32,6 +43,21 @@ public class MikvahConfiguration {
 
     private String fromEmailAddress = "mikvah@mikvah.email";
 
+    /**
+     * Origin patterns of the front ends allowed to open the availability web socket
+     */
+    private List<String> allowedOrigins = new ArrayList<>();
+
+    private int emailWorkerThreads = 4;
+
+    private int emailBatchSize = 20;
+
+    private int stripeEventWorkerThreads = 4;
+
+    private int stripeEventBatchSize = 20;
+
+    private SmtpPoolProperties smtpPool = new SmtpPoolProperties();
+
     @Data
     public static class Auth0Properties {
 
@@ -43,6 +69,41 @@ public class MikvahConfiguration {
 
         @NotNull
         private String apiAudience;
+
+        /**
+         * Read the user's email from the verified email claim of their token when it has one,
+         * instead of asking the management API
+         */
+        private boolean emailFromToken = true;
+    }
+
+    @Data
+    public static class SmtpPoolProperties {
+
+        /**
+         * Most SMTP connections open at once, including those in use
+         */
+        private int size = 4;
+
+        /**
+         * How long an idle connection is kept open for the next email
+         */
+        private Duration keepAlive = Duration.ofMinutes(1);
+
+        /**
+         * Connections older than this are closed instead of being reused
+         */
+        private Duration maxAge = Duration.ofMinutes(15);
+
+        /**
+         * Connections idle for longer than this are checked with a NOOP before they're reused
+         */
+        private Duration validateAfterIdle = Duration.ofSeconds(10);
+
+        /**
+         * How long to wait for a connection when all of them are in use
+         */
+        private Duration borrowTimeout = Duration.ofSeconds(30);
     }
 
     @Data
@@ -25,6 +25,7 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
                 .authorizeRequests()
                 .antMatchers(HttpMethod.GET, "/test-no-auth").permitAll()
                 .antMatchers(HttpMethod.GET, "/appointments/availability").permitAll()
+                .antMatchers(HttpMethod.GET, "/appointments/next-available").permitAll()
                 .antMatchers(HttpMethod.GET, "/hours").permitAll()
                 .antMatchers(HttpMethod.POST, "/donate").permitAll()
                 .antMatchers(HttpMethod.OPTIONS, "/**").permitAll()
@@ -32,8 +33,9 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
                 .antMatchers(HttpMethod.GET, "/user").authenticated()
                 .antMatchers(HttpMethod.POST, "/user").authenticated()
                 .antMatchers(HttpMethod.GET, "/health").permitAll()
-                .antMatchers(HttpMethod.GET, "/metrics").permitAll()
                 .antMatchers(HttpMethod.GET, "/info").permitAll()
+                .antMatchers(HttpMethod.GET, "/metrics", "/metrics/**")
+                        .access("isAuthenticated() and @adminAccess.isAdmin(authentication)")
                 .antMatchers(HttpMethod.POST, "/webhook").permitAll()
                 .antMatchers(HttpMethod.GET, "/attendent-daily-list").permitAll()
                 .antMatchers(HttpMethod.GET, "/health").permitAll()
@@ -48,7 +50,9 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
         .ignoring()
             .antMatchers(HttpMethod.GET, "/hours")
             .antMatchers(HttpMethod.POST, "/donate-guest")
-            .antMatchers(HttpMethod.GET, "/appointments/availability");
+            .antMatchers(HttpMethod.GET, "/appointments/availability")
+            .antMatchers(HttpMethod.GET, "/appointments/next-available")
+            .antMatchers(HttpMethod.GET, "/ws");
 
     }
 
@@ -0,0 +1,65 @@
+package org.lamikvah.website;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.config.ChannelRegistration;
+import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
+import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
+import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+
+@Configuration
+@EnableWebSocketMessageBroker
+public class WebSocketConfiguration implements WebSocketMessageBrokerConfigurer {
+
+    private static final String TOPIC_PREFIX = "/topic";
+
+    @Autowired private MikvahConfiguration config;
+
+    @Override
+    public void configureMessageBroker(MessageBrokerRegistry registry) {
+
+        registry.enableSimpleBroker(TOPIC_PREFIX);
+
+    }
+
+    @Override
+    public void registerStompEndpoints(StompEndpointRegistry registry) {
+
+        registry.addEndpoint("/ws").setAllowedOriginPatterns(config.getAllowedOrigins().toArray(new String[0]));
+
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+
+        registration.interceptors(new RejectTopicSendsInterceptor());
+
+    }
+
+    /**
+     * Clients only subscribe. Topics are published to by the server alone, so nobody can push
+     * made up updates to everyone else.
+     */
+    static class RejectTopicSendsInterceptor implements ChannelInterceptor {
+
+        @Override
+        public Message<?> preSend(Message<?> message, MessageChannel channel) {
+
+            String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+            if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.MESSAGE
+                    && destination != null && destination.startsWith(TOPIC_PREFIX)) {
+                throw new MessageDeliveryException(message, "Clients can't send to " + destination);
+            }
+            return message;
+        }
+
+    }
+
+}
@@ -1,6 +1,9 @@
 package org.lamikvah.website;
 
+import java.util.Set;
+
 import javax.servlet.Filter;
+import javax.servlet.http.HttpServletRequest;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -21,6 +24,11 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class WebsiteApplication {
 
+    /**
+     * These compute their own ETags without rendering the response.
+     */
+    private static final Set<String> VERSIONED_ETAG_PATHS = Set.of("/hours", "/appointments/availability");
+
     public static void main(String[] args) {
 
         SpringApplication.run(WebsiteApplication.class, args);
@@ -38,7 +46,12 @@ public class WebsiteApplication {
 
     @Bean
     public Filter filter(){
-        return new ShallowEtagHeaderFilter();
+        return new ShallowEtagHeaderFilter() {
+            @Override
+            protected boolean shouldNotFilter(HttpServletRequest request) {
+                return VERSIONED_ETAG_PATHS.contains(request.getServletPath());
+            }
+        };
     }
 
 }
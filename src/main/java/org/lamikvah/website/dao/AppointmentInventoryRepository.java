@@ -0,0 +1,47 @@
+package org.lamikvah.website.dao;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import org.lamikvah.website.data.AppointmentInventory;
+import org.lamikvah.website.data.RoomType;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+public interface AppointmentInventoryRepository extends CrudRepository<AppointmentInventory, Long> {
+
+    /**
+     * Adds the row for the given start time and room type if there isn't one yet, and otherwise
+     * brings its capacity up to date in case the hours have changed.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO appointment_inventory (start, room_type, capacity, booked) "
+            + "VALUES (:start, :roomType, :capacity, 0) "
+            + "ON CONFLICT (start, room_type) DO UPDATE SET capacity = EXCLUDED.capacity", nativeQuery = true)
+    int upsert(@Param("start") LocalDateTime start, @Param("roomType") String roomType,
+            @Param("capacity") int capacity);
+
+    /**
+     * Takes one of the seats if any are left. The row stays locked until the transaction ends, so
+     * bookings for the same time and room type take turns from here on.
+     *
+     * @return 1 if a seat was taken, 0 if they're all booked
+     */
+    @Modifying
+    @Query("UPDATE AppointmentInventory i SET i.booked = i.booked + 1 "
+            + "WHERE i.start = :start AND i.roomType = :roomType AND i.booked < i.capacity")
+    int incrementBooked(@Param("start") LocalDateTime start, @Param("roomType") RoomType roomType);
+
+    @Modifying
+    @Query("UPDATE AppointmentInventory i SET i.booked = i.booked - 1 WHERE i.id = :id AND i.booked > 0")
+    int decrementBooked(@Param("id") long id);
+
+    Optional<AppointmentInventory> findByStartAndRoomType(LocalDateTime start, RoomType roomType);
+
+    List<AppointmentInventory> findByStartBetweenAndBookedGreaterThan(LocalDateTime start, LocalDateTime end,
+            int booked);
+
+}
@@ -2,22 +2,58 @@ package org.lamikvah.website.dao;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
+import javax.persistence.LockModeType;
+
+import org.lamikvah.website.data.AdminAppointmentRow;
 import org.lamikvah.website.data.AppointmentSlot;
 import org.lamikvah.website.data.MikvahUser;
 import org.lamikvah.website.data.RoomType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
 public interface AppointmentSlotRepository extends CrudRepository<AppointmentSlot, Long> {
 
     List<AppointmentSlot> findByStartBetweenAndMikvahUserAndRoomTypeOrderByStartAsc(LocalDateTime start,
             LocalDateTime end, MikvahUser mikvahUser, RoomType roomType);
 
-    List<AppointmentSlot> findByStartAndRoomTypeAndMikvahUserIsNullOrderByIdAsc(LocalDateTime start, RoomType roomType);
+    List<AppointmentSlot> findByStartAndRoomType(LocalDateTime start, RoomType roomType);
+
+    List<AppointmentSlot> findByHoldExpirationBefore(LocalDateTime time);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM AppointmentSlot s WHERE s.id = :id")
+    Optional<AppointmentSlot> findByIdForUpdate(@Param("id") long id);
 
     List<AppointmentSlot> findByStartBetweenOrderByStartAsc(LocalDateTime start, LocalDateTime end);
 
-    List<AppointmentSlot> findByStartBetweenAndMikvahUserOrderByStartAsc(LocalDateTime start,
+    /**
+     * The confirmed appointments in the range, leaving out held slots that aren't paid for yet.
+     */
+    List<AppointmentSlot> findByStartBetweenAndMikvahUserIsNotNullAndHoldExpirationIsNullOrderByStartAsc(
+            LocalDateTime start, LocalDateTime end);
+
+    /**
+     * A page of booked appointments starting before {@code end}, ordered by start time and id, that
+     * come after the given start time and id.
+     */
+    @Query("SELECT new org.lamikvah.website.data.AdminAppointmentRow(s.id, s.start, s.roomType, u.title, "
+            + "u.firstName, u.lastName, u.phoneNumber, u.email, s.notes) "
+            + "FROM AppointmentSlot s JOIN s.mikvahUser u "
+            + "WHERE s.start < :end AND s.holdExpiration IS NULL "
+            + "AND (s.start > :afterStart OR (s.start = :afterStart AND s.id > :afterId)) "
+            + "ORDER BY s.start, s.id")
+    List<AdminAppointmentRow> findBookedAfter(@Param("afterStart") LocalDateTime afterStart,
+            @Param("afterId") long afterId, @Param("end") LocalDateTime end, Pageable page);
+
+    /**
+     * The user's confirmed appointments in the range. Held slots aren't paid for yet, so they're left out.
+     */
+    List<AppointmentSlot> findByStartBetweenAndMikvahUserAndHoldExpirationIsNullOrderByStartAsc(LocalDateTime start,
             LocalDateTime end, MikvahUser user);
 
     List<AppointmentSlot> findByStartBetweenAndRoomTypeOrderByStartAsc(LocalDateTime start, LocalDateTime end,
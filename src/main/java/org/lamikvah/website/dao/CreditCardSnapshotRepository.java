@@ -0,0 +1,8 @@
+package org.lamikvah.website.dao;
+
+import org.lamikvah.website.data.CreditCardSnapshot;
+import org.springframework.data.repository.CrudRepository;
+
+public interface CreditCardSnapshotRepository extends CrudRepository<CreditCardSnapshot, String> {
+
+}
@@ -0,0 +1,43 @@
+package org.lamikvah.website.dao;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.lamikvah.website.data.OutboxEmail;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+public interface EmailOutboxRepository extends CrudRepository<OutboxEmail, Long> {
+
+    /**
+     * Locks emails that are due, skipping any another worker already has locked.
+     */
+    @Query(value = "SELECT * FROM email_outbox WHERE sent IS NULL AND failed IS NULL AND next_attempt <= :now "
+            + "ORDER BY next_attempt, id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<OutboxEmail> findDueForUpdate(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    @Query("SELECT COUNT(e) FROM OutboxEmail e WHERE e.sent IS NULL AND e.failed IS NULL")
+    long countUnsent();
+
+    long countByFailedIsNotNull();
+
+    @Modifying
+    @Query("UPDATE OutboxEmail e SET e.sent = :sent WHERE e.id = :id")
+    int markSent(@Param("id") long id, @Param("sent") LocalDateTime sent);
+
+    @Modifying
+    @Query("UPDATE OutboxEmail e SET e.nextAttempt = :nextAttempt, e.lastError = :error WHERE e.id = :id")
+    int markFailed(@Param("id") long id, @Param("nextAttempt") LocalDateTime nextAttempt,
+            @Param("error") String error);
+
+    @Modifying
+    @Query("UPDATE OutboxEmail e SET e.failed = :failed, e.lastError = :error WHERE e.id = :id")
+    int markGivenUp(@Param("id") long id, @Param("failed") LocalDateTime failed, @Param("error") String error);
+
+    @Modifying
+    @Query("DELETE FROM OutboxEmail e WHERE e.sent < :before OR e.failed < :before")
+    int deleteFinishedBefore(@Param("before") LocalDateTime before);
+
+}
@@ -0,0 +1,8 @@
+package org.lamikvah.website.dao;
+
+import org.lamikvah.website.data.MaterializationWatermark;
+import org.springframework.data.repository.CrudRepository;
+
+public interface MaterializationWatermarkRepository extends CrudRepository<MaterializationWatermark, String> {
+
+}
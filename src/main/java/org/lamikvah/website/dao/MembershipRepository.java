@@ -1,10 +1,17 @@
 package org.lamikvah.website.dao;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 import org.lamikvah.website.data.Membership;
 import org.lamikvah.website.data.MikvahUser;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
 public interface MembershipRepository extends CrudRepository<Membership, Long>{
 
@@ -12,4 +19,26 @@ public interface MembershipRepository extends CrudRepository<Membership, Long>{
 
     Optional<Membership> findByStripeSubscriptionId(String stripeSubscriptionId);
 
+    /**
+     * The first page of memberships that don't renew and expired before the cutoff, with their users.
+     */
+    @Query("SELECT m FROM Membership m LEFT JOIN FETCH m.mikvahUser "
+            + "WHERE m.autoRenewEnabled = false AND m.expiration < :cutoff "
+            + "ORDER BY m.expiration, m.id")
+    List<Membership> findExpiredOffline(@Param("cutoff") LocalDateTime cutoff, Pageable page);
+
+    /**
+     * The page of memberships that don't renew and expired before the cutoff following the given one.
+     */
+    @Query("SELECT m FROM Membership m LEFT JOIN FETCH m.mikvahUser "
+            + "WHERE m.autoRenewEnabled = false AND m.expiration < :cutoff "
+            + "AND (m.expiration > :afterExpiration OR (m.expiration = :afterExpiration AND m.id > :afterId)) "
+            + "ORDER BY m.expiration, m.id")
+    List<Membership> findExpiredOfflineAfter(@Param("cutoff") LocalDateTime cutoff,
+            @Param("afterExpiration") LocalDateTime afterExpiration, @Param("afterId") long afterId, Pageable page);
+
+    @Modifying
+    @Query("DELETE FROM Membership m WHERE m.id IN :ids")
+    int deleteAllByIdIn(@Param("ids") Collection<Long> ids);
+
 }
@@ -1,9 +1,13 @@
 package org.lamikvah.website.dao;
 
+import java.util.Collection;
 import java.util.Optional;
 
 import org.lamikvah.website.data.MikvahUser;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
 public interface MikvahUserRepository extends CrudRepository<MikvahUser, Long>{
 
@@ -13,4 +17,8 @@ public interface MikvahUserRepository extends CrudRepository<MikvahUser, Long>{
 
     public Optional<MikvahUser> findByEmail(String email);
 
+    @Modifying
+    @Query("UPDATE MikvahUser u SET u.member = false WHERE u.id IN :ids")
+    public int endMemberships(@Param("ids") Collection<Long> ids);
+
 }
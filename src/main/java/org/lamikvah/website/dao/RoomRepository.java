@@ -0,0 +1,12 @@
+package org.lamikvah.website.dao;
+
+import java.util.List;
+
+import org.lamikvah.website.data.Room;
+import org.springframework.data.repository.CrudRepository;
+
+public interface RoomRepository extends CrudRepository<Room, Long> {
+
+    List<Room> findByActiveTrueOrderByPositionAsc();
+
+}
@@ -0,0 +1,8 @@
+package org.lamikvah.website.dao;
+
+import org.lamikvah.website.data.DeadLetterStripeEvent;
+import org.springframework.data.repository.CrudRepository;
+
+public interface StripeEventDeadLetterRepository extends CrudRepository<DeadLetterStripeEvent, String> {
+
+}
@@ -0,0 +1,60 @@
+package org.lamikvah.website.dao;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.lamikvah.website.data.InboxStripeEvent;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+public interface StripeEventInboxRepository extends CrudRepository<InboxStripeEvent, String> {
+
+    /**
+     * @return 1 if the event was added, 0 if it had already been received
+     */
+    @Modifying
+    @Query(value = "INSERT INTO stripe_event_inbox "
+            + "(stripe_event_id, event_type, customer_id, payload, stripe_created, received, next_attempt, attempts) "
+            + "VALUES (:id, :type, :customerId, :payload, :stripeCreated, :received, :received, 0) "
+            + "ON CONFLICT (stripe_event_id) DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("id") String id, @Param("type") String type,
+            @Param("customerId") String customerId, @Param("payload") String payload,
+            @Param("stripeCreated") LocalDateTime stripeCreated, @Param("received") LocalDateTime received);
+
+    /**
+     * Locks due events that are the oldest unprocessed event for their customer, skipping any
+     * another worker already has locked. Later events for a customer wait until the ones before
+     * them are done.
+     */
+    @Query(value = "SELECT * FROM stripe_event_inbox e WHERE e.processed IS NULL AND e.next_attempt <= :now "
+            + "AND NOT EXISTS (SELECT 1 FROM stripe_event_inbox p WHERE p.customer_id = e.customer_id "
+            + "AND p.processed IS NULL "
+            + "AND (p.stripe_created, p.received, p.stripe_event_id) < (e.stripe_created, e.received, e.stripe_event_id)) "
+            + "ORDER BY e.stripe_created, e.received LIMIT :limit FOR UPDATE OF e SKIP LOCKED", nativeQuery = true)
+    List<InboxStripeEvent> findDueForUpdate(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    @Query("SELECT COUNT(e) FROM InboxStripeEvent e WHERE e.processed IS NULL")
+    long countUnprocessed();
+
+    @Modifying
+    @Query("UPDATE InboxStripeEvent e SET e.processed = :processed, e.lastError = :error WHERE e.stripeEventId = :id")
+    int markProcessed(@Param("id") String id, @Param("processed") LocalDateTime processed,
+            @Param("error") String error);
+
+    @Modifying
+    @Query("UPDATE InboxStripeEvent e SET e.nextAttempt = :nextAttempt, e.lastError = :error "
+            + "WHERE e.stripeEventId = :id")
+    int markFailed(@Param("id") String id, @Param("nextAttempt") LocalDateTime nextAttempt,
+            @Param("error") String error);
+
+    /**
+     * Stripe stops redelivering an event after a few days, so only recent events are needed to
+     * catch duplicates.
+     */
+    @Modifying
+    @Query("DELETE FROM InboxStripeEvent e WHERE e.processed < :before")
+    int deleteProcessedBefore(@Param("before") LocalDateTime before);
+
+}
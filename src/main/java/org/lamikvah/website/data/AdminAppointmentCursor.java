@@ -0,0 +1,17 @@
+package org.lamikvah.website.data;
+
+import java.time.LocalDateTime;
+
+import lombok.Value;
+
+/**
+ * Where the next page of the admin appointment list starts: after the appointment with this start
+ * time and id.
+ */
+@Value
+public class AdminAppointmentCursor {
+
+    LocalDateTime start;
+
+    long id;
+}
@@ -0,0 +1,31 @@
+package org.lamikvah.website.data;
+
+import java.time.LocalDateTime;
+
+import lombok.Value;
+
+/**
+ * A booked appointment with the details of who booked it, selected directly by the admin
+ * appointment list query without loading the slot or user entities.
+ */
+@Value
+public class AdminAppointmentRow {
+
+    long id;
+
+    LocalDateTime start;
+
+    RoomType roomType;
+
+    String title;
+
+    String firstName;
+
+    String lastName;
+
+    String phoneNumber;
+
+    String email;
+
+    String notes;
+}
@@ -0,0 +1,47 @@
+package org.lamikvah.website.data;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * How many seats a start time and room type has and how many of them are booked or held. A row is
+ * added the first time one of the seats is booked, and booking only goes through if it can raise
+ * {@code booked} without passing {@code capacity}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "appointment_inventory", uniqueConstraints = @UniqueConstraint(
+        columnNames = { "start", "room_type" }, name = "appointment_inventory_start_room_type_key"))
+public class AppointmentInventory {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "start")
+    private LocalDateTime start;
+
+    @Column(name = "room_type")
+    @Enumerated(EnumType.STRING)
+    private RoomType roomType;
+
+    private int capacity;
+
+    private int booked;
+
+}
@@ -12,7 +12,9 @@ import javax.persistence.Id;
 import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
 
@@ -26,11 +28,16 @@ import lombok.NoArgsConstructor;
 @Entity
 @Table(indexes = {
         @Index(columnList = "start", name = "appointment_slot_start_idx"),
-        @Index(columnList = "mikvah_user_id", name = "appointment_slot_mikvah_user_id_idx") })
+        @Index(columnList = "mikvah_user_id", name = "appointment_slot_mikvah_user_id_idx"),
+        @Index(columnList = "hold_expiration", name = "appointment_slot_hold_expiration_idx"),
+        @Index(columnList = "inventory_id", name = "appointment_slot_inventory_id_idx") },
+        uniqueConstraints = @UniqueConstraint(columnNames = { "start", "room_id" },
+                name = "appointment_slot_start_room_id_key"))
 public class AppointmentSlot {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "appointment_slot_seq")
+    @SequenceGenerator(name = "appointment_slot_seq", sequenceName = "appointment_slot_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "start")
@@ -51,4 +58,22 @@ public class AppointmentSlot {
     @Enumerated(EnumType.STRING)
     private RoomType roomType;
 
+    /**
+     * The room the appointment is in. Only missing for appointments from before rooms were recorded
+     * whose room couldn't be worked out.
+     */
+    @ManyToOne
+    @JoinColumn(name = "room_id")
+    private Room room;
+
+    /**
+     * Set while the slot is held for a user whose payment has not been confirmed yet, in UTC
+     */
+    @Column(name = "hold_expiration")
+    private LocalDateTime holdExpiration;
+
+    @ManyToOne(optional = false)
+    @JoinColumn(name = "inventory_id")
+    private AppointmentInventory inventory;
+
 }
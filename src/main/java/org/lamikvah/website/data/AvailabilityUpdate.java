@@ -0,0 +1,30 @@
+package org.lamikvah.website.data;
+
+import java.time.LocalDateTime;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Pushed to subscribers of {@code /topic/availability} whenever the number of open slots for a
+ * start time and room type changes.
+ */
+@Value
+@Builder
+public class AvailabilityUpdate {
+
+    LocalDateTime dateTime;
+
+    RoomType roomType;
+
+    /**
+     * How many slots are still open, where 0 means the time is sold out
+     */
+    long remaining;
+
+    /**
+     * Increases with every change, so updates that arrive out of order can be ignored
+     */
+    long version;
+
+}
@@ -3,11 +3,13 @@ package org.lamikvah.website.data;
 import java.time.LocalDateTime;
 import java.util.Comparator;
 
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 
 @Data
 @Builder
+@AllArgsConstructor
 public class AvailableDateTimeAndRoomType implements Comparable<AvailableDateTimeAndRoomType> {
 
     private static final Comparator<AvailableDateTimeAndRoomType> NATURAL_ORDER_COMPARATOR = Comparator
@@ -18,6 +20,11 @@ public class AvailableDateTimeAndRoomType implements Comparable<AvailableDateTim
 
     private final RoomType roomType;
 
+    /**
+     * How many slots are still open at this time for this room type
+     */
+    private final long remaining;
+
     @Override
     public int compareTo(final AvailableDateTimeAndRoomType other) {
 
@@ -0,0 +1,61 @@
+package org.lamikvah.website.data;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A copy of a Stripe customer's default card, kept up to date from webhooks so showing the card
+ * doesn't require calling Stripe. A snapshot without last4 means the customer has no default card.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name="credit_card_snapshot")
+public class CreditCardSnapshot {
+
+    @Id
+    @Column(name="stripe_customer_id")
+    private String stripeCustomerId;
+
+    private String brand;
+
+    private String last4;
+
+    @Column(name="expiration_month")
+    private int expirationMonth;
+
+    @Column(name="expiration_year")
+    private int expirationYear;
+
+    /**
+     * In UTC
+     */
+    private LocalDateTime updated;
+
+    public Optional<CreditCard> toCreditCard() {
+
+        if (last4 == null) {
+            return Optional.empty();
+        }
+        return Optional.of(CreditCard.builder()
+                .brand(brand)
+                .last4(last4)
+                .expirationMonth(expirationMonth)
+                .expirationYear(expirationYear)
+                .build());
+
+    }
+
+}
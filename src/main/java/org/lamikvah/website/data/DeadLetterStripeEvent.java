@@ -0,0 +1,45 @@
+package org.lamikvah.website.data;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A Stripe webhook event that still failed after every retry, kept for someone to look into.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "stripe_event_dead_letter")
+public class DeadLetterStripeEvent {
+
+    @Id
+    @Column(name = "stripe_event_id")
+    private String stripeEventId;
+
+    @Column(name = "event_type")
+    private String eventType;
+
+    @Column(name = "customer_id")
+    private String customerId;
+
+    private String payload;
+
+    private int attempts;
+
+    @Column(name = "last_error")
+    private String lastError;
+
+    private LocalDateTime failed;
+
+}
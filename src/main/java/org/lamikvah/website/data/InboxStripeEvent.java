@@ -0,0 +1,57 @@
+package org.lamikvah.website.data;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A Stripe webhook event as it was received. The row is kept after the event is processed so
+ * redeliveries of it are ignored. All times are in UTC.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "stripe_event_inbox")
+public class InboxStripeEvent {
+
+    @Id
+    @Column(name = "stripe_event_id")
+    private String stripeEventId;
+
+    @Column(name = "event_type")
+    private String eventType;
+
+    /**
+     * Events for the same customer are processed in the order Stripe created them
+     */
+    @Column(name = "customer_id")
+    private String customerId;
+
+    private String payload;
+
+    @Column(name = "stripe_created")
+    private LocalDateTime stripeCreated;
+
+    private LocalDateTime received;
+
+    @Column(name = "next_attempt")
+    private LocalDateTime nextAttempt;
+
+    private int attempts;
+
+    private LocalDateTime processed;
+
+    @Column(name = "last_error")
+    private String lastError;
+
+}
@@ -0,0 +1,33 @@
+package org.lamikvah.website.data;
+
+import java.time.LocalDate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The last day a scheduled job has generated rows for, along with a fingerprint of the rules it
+ * used so a change to those rules causes everything to be generated again.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name="materialization_watermark")
+public class MaterializationWatermark {
+
+    @Id
+    private String name;
+
+    @Column(name="materialized_through")
+    private LocalDate materializedThrough;
+
+    private String fingerprint;
+
+}
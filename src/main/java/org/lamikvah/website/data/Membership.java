@@ -28,6 +28,7 @@ import lombok.NoArgsConstructor;
 @Entity
 @Table(indexes= {@Index(columnList="mikvah_user_id", name="membership_mikvah_user_id_idx"),
         @Index(columnList="expiration", name="membership_expiration_idx"),
+        @Index(columnList="auto_renew_enabled,expiration,id", name="membership_auto_renew_expiration_idx"),
         @Index(columnList="stripe_subscription_id", name="membership_stripe_subscription_id_idx")})
 public class Membership {
 
@@ -21,7 +21,7 @@ import lombok.NoArgsConstructor;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 @Entity
 @Table(indexes= {
         @Index(columnList="auth0_user_id", name="mikvah_user_auth0_user_id_idx"),
@@ -0,0 +1,65 @@
+package org.lamikvah.website.data;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A rendered email waiting to be sent. It is saved in the same transaction as the change it is
+ * about, and sent afterwards by the outbox worker. All times are in UTC.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "email_outbox")
+public class OutboxEmail {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "email_outbox_seq")
+    @SequenceGenerator(name = "email_outbox_seq", sequenceName = "email_outbox_seq", allocationSize = 50)
+    private Long id;
+
+    /**
+     * Comma separated RFC 822 addresses, including names
+     */
+    private String recipients;
+
+    private String subject;
+
+    @Column(name = "text_body")
+    private String textBody;
+
+    @Column(name = "html_body")
+    private String htmlBody;
+
+    private LocalDateTime created;
+
+    @Column(name = "next_attempt")
+    private LocalDateTime nextAttempt;
+
+    private int attempts;
+
+    private LocalDateTime sent;
+
+    /**
+     * When the email was given up on after running out of attempts
+     */
+    private LocalDateTime failed;
+
+    @Column(name = "last_error")
+    private String lastError;
+
+}
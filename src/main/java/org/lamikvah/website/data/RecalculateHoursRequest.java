@@ -0,0 +1,14 @@
+package org.lamikvah.website.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class RecalculateHoursRequest {
+    private LocalDate from;
+}
@@ -39,6 +39,17 @@ public class ReservationHistoryLog {
     @JoinColumn(name = "appointment_slot_id")
     private AppointmentSlot appointmentSlot;
 
+    /**
+     * Kept here too, since cancelled appointments are deleted
+     */
+    @Column(name = "appointment_start")
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime appointmentStart;
+
+    @Column(name = "room_type")
+    @Enumerated(EnumType.STRING)
+    private RoomType roomType;
+
     @ManyToOne
     @JoinColumn(name = "mikvah_user_id")
     private MikvahUser mikvahUser;
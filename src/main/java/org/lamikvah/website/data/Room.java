@@ -0,0 +1,72 @@
+package org.lamikvah.website.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.CollectionTable;
+import javax.persistence.Column;
+import javax.persistence.ElementCollection;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A room appointments can be booked in. Starting {@code firstStartMinutes} after opening, it
+ * takes back to back appointments of {@code durationMinutes}, with {@code turnoverMinutes} in
+ * between to get it ready for the next one.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Table(name = "room")
+public class Room {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String name;
+
+    @Column(name = "room_type")
+    @Enumerated(EnumType.STRING)
+    private RoomType roomType;
+
+    /**
+     * Orders the rooms, which is also the order they're booked in
+     */
+    private int position;
+
+    @Column(name = "first_start_minutes")
+    private int firstStartMinutes;
+
+    @Column(name = "duration_minutes")
+    private int durationMinutes;
+
+    @Column(name = "turnover_minutes")
+    private int turnoverMinutes;
+
+    private boolean active;
+
+    /**
+     * When the room can be used, within the mikvah's hours. A room without any is available
+     * whenever the mikvah is open.
+     */
+    @Builder.Default
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "room_availability_window", joinColumns = @JoinColumn(name = "room_id"))
+    private List<RoomAvailabilityWindow> availabilityWindows = new ArrayList<>();
+
+}
@@ -0,0 +1,34 @@
+package org.lamikvah.website.data;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Embeddable
+public class RoomAvailabilityWindow {
+
+    /**
+     * The day this window applies to, or null for every day
+     */
+    @Column(name = "day_of_week")
+    @Enumerated(EnumType.STRING)
+    private DayOfWeek dayOfWeek;
+
+    @Column(name = "opens")
+    private LocalTime opens;
+
+    @Column(name = "closes")
+    private LocalTime closes;
+
+}
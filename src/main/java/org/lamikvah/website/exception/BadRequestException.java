@@ -0,0 +1,13 @@
+package org.lamikvah.website.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class BadRequestException extends RuntimeException {
+    private static final long serialVersionUID = 4398140618725394170L;
+
+    public BadRequestException(String message) {
+        super(message);
+    }
+}
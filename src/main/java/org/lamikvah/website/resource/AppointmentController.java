@@ -3,13 +3,22 @@ package org.lamikvah.website.resource;
 import lombok.extern.slf4j.Slf4j;
 import org.lamikvah.website.data.*;
 import org.lamikvah.website.exception.AppointmentCreationException;
+import org.lamikvah.website.exception.BadRequestException;
 import org.lamikvah.website.exception.UnauthorizedException;
 import org.lamikvah.website.service.AppointmentService;
 import org.lamikvah.website.service.MikvahUserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import javax.servlet.http.HttpServletRequest;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,6 +27,12 @@ import java.util.Optional;
 @Slf4j
 public class AppointmentController {
 
+    private static final CacheControl AVAILABILITY_CACHE_CONTROL = CacheControl.maxAge(Duration.ofSeconds(15))
+            .staleWhileRevalidate(Duration.ofMinutes(1))
+            .cachePublic();
+
+    private static final int MAX_NEXT_AVAILABLE = 50;
+
     @Autowired
     private AppointmentService appointmentService;
 
@@ -25,9 +40,29 @@ public class AppointmentController {
     private MikvahUserService mikvahUserService;
 
     @GetMapping("/appointments/availability")
-    public List<AvailableDateTimeAndRoomType> getAvailableAppointments() {
+    public ResponseEntity<List<AvailableDateTimeAndRoomType>> getAvailableAppointments(final WebRequest request) {
 
-        return appointmentService.getAvailableTimes();
+        final String eTag = appointmentService.getAvailableTimesETag();
+        if (request.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).cacheControl(AVAILABILITY_CACHE_CONTROL).build();
+        }
+        return ResponseEntity.ok().eTag(eTag).cacheControl(AVAILABILITY_CACHE_CONTROL)
+                .body(appointmentService.getAvailableTimes());
+    }
+
+    /**
+     * The soonest open times for a room type, so clients don't have to search the whole availability
+     * list for them.
+     */
+    @GetMapping("/appointments/next-available")
+    public List<AvailableDateTimeAndRoomType> getNextAvailableAppointments(@RequestParam final RoomType roomType,
+            @RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE_TIME) final LocalDateTime after,
+            @RequestParam(defaultValue = "1") final int count) {
+
+        if (count < 1 || count > MAX_NEXT_AVAILABLE) {
+            throw new BadRequestException("Please ask for between 1 and " + MAX_NEXT_AVAILABLE + " times.");
+        }
+        return appointmentService.getNextAvailableTimes(roomType, Optional.ofNullable(after), count);
     }
 
     @PostMapping("/appointments")
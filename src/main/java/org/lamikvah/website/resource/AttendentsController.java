@@ -1,28 +1,44 @@
 package org.lamikvah.website.resource;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.security.Principal;
 import java.time.Clock;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.List;
+import java.util.Optional;
 
 import com.auth0.exception.Auth0Exception;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.lamikvah.website.MikvahConfiguration;
+import org.lamikvah.website.data.AdminAppointmentCursor;
 import org.lamikvah.website.data.AdminAppointmentView;
 import org.lamikvah.website.data.AppointmentsViewRequest;
 import org.lamikvah.website.data.AttendentAppointmentView;
+import org.lamikvah.website.data.MessageResponse;
 import org.lamikvah.website.data.MikvahUser;
+import org.lamikvah.website.data.RecalculateHoursRequest;
+import org.lamikvah.website.exception.BadRequestException;
 import org.lamikvah.website.exception.ServerErrorException;
 import org.lamikvah.website.exception.UnauthorizedException;
 import org.lamikvah.website.service.AppointmentService;
+import org.lamikvah.website.service.DailyHoursCreationService;
 import org.lamikvah.website.service.MikvahUserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -36,6 +52,10 @@ public class AttendentsController {
     @Autowired AppointmentService appointmentService;
     @Autowired MikvahUserService mikvahUserService;
     @Autowired MikvahConfiguration config;
+    @Autowired DailyHoursCreationService dailyHoursCreationService;
+    @Autowired ObjectMapper objectMapper;
+
+    private static final int MAX_ADMIN_APPOINTMENTS = 10000;
 
     @GetMapping("/attendent-daily-list")
     public List<AttendentAppointmentView> dailyList(){
@@ -47,6 +67,74 @@ public class AttendentsController {
     @PostMapping("/admin-daily-list")
     public List<AdminAppointmentView> dailyList(@RequestBody AppointmentsViewRequest request,
                                                 HttpServletRequest servletRequest) {
+        requireAdmin(servletRequest);
+
+        LocalDate date = request.getDate();
+        log.info("Getting admin view for {}", date);
+        return appointmentService.getAppointmentsForAdmins(date);
+    }
+
+    @PostMapping("/admin-recalculate-hours")
+    public MessageResponse recalculateHours(@RequestBody RecalculateHoursRequest request,
+                                            HttpServletRequest servletRequest) {
+        requireAdmin(servletRequest);
+
+        LocalDate from = request.getFrom();
+        if (from == null) {
+            throw new BadRequestException("Please provide a date to recalculate hours from.");
+        }
+        log.info("Recalculating hours starting from {}", from);
+        dailyHoursCreationService.recalculateHoursFrom(from);
+        return MessageResponse.builder().success(true)
+                .message("Hours were recalculated starting from " + from + ".").build();
+    }
+
+    /**
+     * Streams the booked appointments in a date range as
+     * <code>{"appointments": [...], "next": {"start": ..., "id": ...}}</code>, at most {@code limit} of
+     * them. When there are more, pass {@code next} back as {@code afterStart} and {@code afterId} to
+     * get the following ones.
+     */
+    @GetMapping("/admin-appointments")
+    public ResponseEntity<StreamingResponseBody> appointments(
+            @RequestParam @DateTimeFormat(iso = ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = ISO.DATE) LocalDate to,
+            @RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE_TIME) LocalDateTime afterStart,
+            @RequestParam(required = false) Long afterId,
+            @RequestParam(defaultValue = "" + MAX_ADMIN_APPOINTMENTS) int limit,
+            HttpServletRequest servletRequest) {
+
+        requireAdmin(servletRequest);
+
+        if (to.isBefore(from) || (afterStart == null) != (afterId == null)) {
+            throw new BadRequestException("Please provide a valid date range.");
+        }
+        final Optional<AdminAppointmentCursor> after = afterStart == null ? Optional.empty()
+                : Optional.of(new AdminAppointmentCursor(afterStart, afterId));
+        final int boundedLimit = Math.max(1, Math.min(limit, MAX_ADMIN_APPOINTMENTS));
+        log.info("Getting admin appointments from {} to {} after {}", from, to, after);
+
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+                json.writeStartObject();
+                json.writeArrayFieldStart("appointments");
+                Optional<AdminAppointmentCursor> next = appointmentService.forEachAppointmentForAdmins(from, to,
+                        after, boundedLimit, appointment -> {
+                            try {
+                                json.writeObject(appointment);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        });
+                json.writeEndArray();
+                json.writeObjectField("next", next.orElse(null));
+                json.writeEndObject();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    private void requireAdmin(HttpServletRequest servletRequest) {
         Principal principal = servletRequest.getUserPrincipal();
 
         try {
@@ -59,9 +147,5 @@ public class AttendentsController {
             log.error("Failed to get user from Auth0.", e);
             throw new ServerErrorException("There was a problem getting your user information. Please try again later.", e);
         }
-
-        LocalDate date = request.getDate();
-        log.info("Getting admin view for {}", date);
-        return appointmentService.getAppointmentsForAdmins(date);
     }
 }
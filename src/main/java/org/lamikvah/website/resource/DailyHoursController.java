@@ -1,24 +1,37 @@
 package org.lamikvah.website.resource;
 
+import java.time.Duration;
 import java.util.List;
 
 import org.lamikvah.website.data.DailyHours;
 import org.lamikvah.website.service.DailyHoursService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 @CrossOrigin
 @RestController
 public class DailyHoursController {
+
+    private static final CacheControl CACHE_CONTROL = CacheControl.maxAge(Duration.ofMinutes(5))
+            .staleWhileRevalidate(Duration.ofHours(1))
+            .cachePublic();
     
     @Autowired private DailyHoursService service;
 
     @GetMapping("/hours")
-    public List<DailyHours> getHours() {
+    public ResponseEntity<List<DailyHours>> getHours(WebRequest request) {
         
-        return service.getHoursForCurrentWeek();
+        String eTag = service.getCurrentWeekETag();
+        if (request.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).cacheControl(CACHE_CONTROL).build();
+        }
+        return ResponseEntity.ok().eTag(eTag).cacheControl(CACHE_CONTROL).body(service.getHoursForCurrentWeek());
         
     }
 }
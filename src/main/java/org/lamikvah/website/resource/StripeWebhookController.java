@@ -1,12 +1,7 @@
 package org.lamikvah.website.resource;
 
-import java.util.Optional;
-
 import org.lamikvah.website.MikvahConfiguration;
-import org.lamikvah.website.dao.ProcessedStripeEventRespository;
-import org.lamikvah.website.data.ProcessedStripeEvent;
-import org.lamikvah.website.service.EmailService;
-import org.lamikvah.website.service.MembershipService;
+import org.lamikvah.website.service.StripeEventInboxService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -16,13 +11,14 @@ import org.springframework.web.bind.annotation.RestController;
 
 import com.stripe.exception.SignatureVerificationException;
 import com.stripe.model.Event;
-import com.stripe.model.Invoice;
-import com.stripe.model.StripeObject;
-import com.stripe.model.Subscription;
 import com.stripe.net.Webhook;
 
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Stores verified Stripe events in the inbox and acknowledges them right away. The
+ * {@link org.lamikvah.website.service.StripeEventWorker} processes them.
+ */
 @RestController
 @Slf4j
 public class StripeWebhookController {
@@ -31,19 +27,12 @@ public class StripeWebhookController {
     private MikvahConfiguration config;
 
     @Autowired
-    private ProcessedStripeEventRespository repo;
-
-    @Autowired
-    private MembershipService membershipService;
-
-    @Autowired
-    private EmailService emailService;
+    private StripeEventInboxService inbox;
 
     @PostMapping("/webhook")
     public ResponseEntity<String> handleStripeEvent(@RequestBody final String payload,
             @RequestHeader("Stripe-Signature") final String sigHeader) {
 
-        log.info("Processing event {}", payload);
         Event event;
         try {
             event = Webhook.constructEvent(payload, sigHeader, config.getStripe().getWebhookEndpointSecret());
@@ -51,36 +40,11 @@ public class StripeWebhookController {
             log.error("Signature validation failed!!!!", e);
             return ResponseEntity.noContent().build();
         }
-        final String eventId = event.getId();
-        final Optional<ProcessedStripeEvent> processedEvent = repo.findById(eventId);
-        if (processedEvent.isPresent()) {
-            log.warn("Already processed this event!");
-            return ResponseEntity.noContent().build();
-        }
 
-        final String eventType = event.getType();
-        final Optional<StripeObject> optionalObject = event.getDataObjectDeserializer().getObject();
-        if (!optionalObject.isPresent()) {
-            log.warn("Received event that could not be deserielized!!! event={}", event);
-            return ResponseEntity.noContent().build();
-        }
-        final StripeObject object = optionalObject.get();
-        switch (eventType) {
-            case "invoice.upcoming":
-                final Invoice upcomingInvoice = (Invoice) object;
-                log.info("Sending email about upcoming membership renewal: {}", upcomingInvoice);
-                emailService.sendUpcomingRenewalEmail(upcomingInvoice);
-                break;
-            case "invoice.payment_succeeded":
-                final Invoice invoice = (Invoice) object;
-                membershipService.updateMembersip(invoice);
-                break;
-            case "customer.subscription.deleted":
-                final Subscription subscription = (Subscription) object;
-                membershipService.cancelMembership(subscription);
-                break;
-            default:
-                log.debug("Received event of type={}", eventType);
+        if (inbox.record(event, payload)) {
+            log.info("Received event {} of type={}", event.getId(), event.getType());
+        } else {
+            log.warn("Already received event {}!", event.getId());
         }
 
         return ResponseEntity.noContent().build();
@@ -0,0 +1,204 @@
+package org.lamikvah.website.service;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.lamikvah.website.MikvahConfiguration;
+import org.lamikvah.website.dao.AppointmentInventoryRepository;
+import org.lamikvah.website.dao.AppointmentSlotRepository;
+import org.lamikvah.website.dao.ReservationHistoryLogRepository;
+import org.lamikvah.website.data.AppointmentAction;
+import org.lamikvah.website.data.AppointmentInventory;
+import org.lamikvah.website.data.AppointmentSlot;
+import org.lamikvah.website.data.MikvahUser;
+import org.lamikvah.website.data.ReservationHistoryLog;
+import org.lamikvah.website.data.Room;
+import org.lamikvah.website.data.RoomType;
+import org.lamikvah.website.exception.AppointmentCreationException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * The short database transactions that make up a booking. A slot is first held for the user,
+ * then charged for outside of any transaction, then confirmed, so no connection or row lock is
+ * held while waiting on Stripe. Slots only have a row while they're held or booked.
+ */
+@Component
+@Slf4j
+public class AppointmentHoldService {
+
+  @Autowired
+  private MikvahConfiguration config;
+
+  @Autowired
+  private AppointmentSlotRepository appointmentSlotRepository;
+
+  @Autowired
+  private AppointmentInventoryRepository appointmentInventoryRepository;
+
+  @Autowired
+  private ReservationHistoryLogRepository reservationHistoryLogRepository;
+
+  @Autowired
+  private EmailService emailService;
+
+  @Autowired
+  private AvailabilityIndex availabilityIndex;
+
+  @Autowired
+  private SlotGrid slotGrid;
+
+  @Autowired
+  private OccupancyMap occupancyMap;
+
+  @Transactional(isolation = Isolation.READ_COMMITTED, timeout = 10)
+  public AppointmentSlot hold(final LocalDateTime start, final RoomType roomType,
+      final MikvahUser user, final String notes) {
+
+    final Optional<AppointmentSlot> openSlot = claimSlot(start, roomType);
+    if (!openSlot.isPresent()) {
+      log.warn(
+          "User {} tried to make an appointment at {} for {} but there were no appointment slots available!",
+          user, start, roomType);
+      throw new AppointmentCreationException(
+          "There were no available appointments for the requested time. Please try a different time.");
+    }
+
+    final AppointmentSlot slot = openSlot.get();
+    slot.setMikvahUser(user);
+    slot.setNotes(notes);
+    // Truncated so the value read back from the database still identifies this hold
+    slot.setHoldExpiration(LocalDateTime.now(Clock.systemUTC())
+        .plusMinutes(config.getAppointmentHoldMinutes()).truncatedTo(ChronoUnit.SECONDS));
+    final AppointmentSlot savedSlot = appointmentSlotRepository.save(slot);
+    availabilityIndex.slotBooked(savedSlot.getStart(), savedSlot.getRoomType());
+    occupancyMap.slotBooked(savedSlot);
+
+    log.debug("Held appointment {} for user {}", savedSlot, user);
+    return savedSlot;
+  }
+
+  /**
+   * Takes a seat at the given time from the inventory and returns an unsaved slot for the first
+   * room that's free. Must be called inside a transaction, which then holds the inventory row lock
+   * until it ends.
+   */
+  @Transactional(isolation = Isolation.READ_COMMITTED, timeout = 10)
+  public Optional<AppointmentSlot> claimSlot(final LocalDateTime start, final RoomType roomType) {
+
+    final List<Room> rooms = slotGrid.getRooms(start, roomType);
+    if (rooms.isEmpty()) {
+      return Optional.empty();
+    }
+    appointmentInventoryRepository.upsert(start, roomType.name(), rooms.size());
+    if (appointmentInventoryRepository.incrementBooked(start, roomType) == 0) {
+      return Optional.empty();
+    }
+    final AppointmentInventory inventory =
+        appointmentInventoryRepository.findByStartAndRoomType(start, roomType).get();
+
+    // Other bookings for this time wait on the inventory row, so the rooms can't be taken under us
+    final Set<Long> takenRoomIds = appointmentSlotRepository.findByStartAndRoomType(start, roomType)
+        .stream()
+        .map(AppointmentSlot::getRoom)
+        .filter(Objects::nonNull)
+        .map(Room::getId)
+        .collect(Collectors.toSet());
+    // Never empty, since fewer appointments are booked at this time than there are rooms
+    final List<Room> openRooms = rooms.stream()
+        .filter(room -> !takenRoomIds.contains(room.getId()))
+        .collect(Collectors.toList());
+    final AppointmentSlot slot = new AppointmentSlot();
+    slot.setStart(start);
+    slot.setRoomType(roomType);
+    slot.setInventory(inventory);
+    // Prefer a room that no earlier booking runs into, which can happen after the hours change
+    slot.setRoom(openRooms.stream()
+        .filter(room -> occupancyMap.isRoomFree(start, room.getId()))
+        .findFirst()
+        .orElse(openRooms.get(0)));
+    return Optional.of(slot);
+  }
+
+  /**
+   * Deletes a held or booked slot and gives its seat back to the inventory.
+   */
+  @Transactional(isolation = Isolation.READ_COMMITTED, timeout = 10)
+  public void freeSlot(final AppointmentSlot slot) {
+
+    appointmentSlotRepository.delete(slot);
+    appointmentInventoryRepository.decrementBooked(slot.getInventory().getId());
+    availabilityIndex.slotReleased(slot.getStart(), slot.getRoomType());
+    occupancyMap.slotReleased(slot);
+  }
+
+  @Transactional(isolation = Isolation.READ_COMMITTED, timeout = 10)
+  public AppointmentSlot confirm(final AppointmentSlot hold,
+      final Optional<String> stripeChargeId) {
+
+    final LocalDateTime now = LocalDateTime.now(Clock.systemUTC());
+    final MikvahUser user = hold.getMikvahUser();
+    final AppointmentSlot slot = lockHold(hold)
+        .filter(heldSlot -> heldSlot.getHoldExpiration().isAfter(now))
+        .orElseThrow(() -> new AppointmentCreationException(
+            "Your appointment could not be confirmed in time. Please try again."));
+
+    slot.setHoldExpiration(null);
+    if (stripeChargeId.isPresent()) {
+      slot.setStripeChargeId(stripeChargeId.get());
+    }
+    final AppointmentSlot savedSlot = appointmentSlotRepository.save(slot);
+
+    final ReservationHistoryLog reservationHistoryLog = ReservationHistoryLog.builder()
+        .action(AppointmentAction.MADE).appointmentSlot(savedSlot)
+        .appointmentStart(savedSlot.getStart())
+        .roomType(savedSlot.getRoomType())
+        .created(now)
+        .mikvahUser(user).build();
+
+    if (stripeChargeId.isPresent()) {
+      reservationHistoryLog.setStripeId(stripeChargeId.get());
+    }
+    reservationHistoryLogRepository.save(reservationHistoryLog);
+
+    emailService.sendAppointmentConfirmationEmail(user, savedSlot);
+
+    return savedSlot;
+  }
+
+  /**
+   * Gives a held slot back, unless it has since been confirmed or given to someone else.
+   *
+   * @return whether the hold was released
+   */
+  @Transactional(isolation = Isolation.READ_COMMITTED, timeout = 10)
+  public boolean release(final AppointmentSlot hold) {
+
+    final Optional<AppointmentSlot> heldSlot = lockHold(hold);
+    if (!heldSlot.isPresent()) {
+      return false;
+    }
+
+    freeSlot(heldSlot.get());
+
+    log.info("Released hold on appointment {} for user {}", hold.getId(), hold.getMikvahUser());
+    return true;
+  }
+
+  private Optional<AppointmentSlot> lockHold(final AppointmentSlot hold) {
+
+    return appointmentSlotRepository.findByIdForUpdate(hold.getId())
+        .filter(slot -> hold.getHoldExpiration().equals(slot.getHoldExpiration())
+            && slot.getMikvahUser() != null
+            && Objects.equals(hold.getMikvahUser().getId(), slot.getMikvahUser().getId()));
+  }
+
+}
@@ -9,16 +9,19 @@ import com.stripe.exception.StripeException;
 import com.stripe.model.Charge;
 import com.stripe.model.Refund;
 import com.stripe.param.ChargeCreateParams;
+import com.stripe.param.ChargeListParams;
 import com.stripe.param.RefundCreateParams;
 import java.time.Clock;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.lamikvah.website.MikvahConfiguration;
@@ -28,10 +31,11 @@ import org.lamikvah.website.data.*;
 import org.lamikvah.website.exception.AppointmentCreationException;
 import org.lamikvah.website.exception.ServerErrorException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
 @Component
@@ -40,6 +44,20 @@ public class AppointmentService {
 
   private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("h:mm a");
 
+  private static final DateTimeFormatter NEXT_OPEN_FORMAT =
+      DateTimeFormatter.ofPattern("h:mm a 'on' EEEE, MMMM d");
+
+  private static final long ONE_MINUTE_IN_MILLISECONDS = 60000;
+
+  private static final int AVAILABILITY_DAYS = 8;
+
+  private static final int ADMIN_LIST_PAGE_SIZE = 500;
+
+  /**
+   * Charge metadata naming the held slot a charge was made for
+   */
+  private static final String SLOT_ID_METADATA_KEY = "appointment_slot_id";
+
   @Autowired
   private MikvahConfiguration config;
 
@@ -55,8 +73,48 @@ public class AppointmentService {
   @Autowired
   private EmailService emailService;
 
+  @Autowired
+  private AvailabilityIndex availabilityIndex;
+
+  @Autowired
+  private AppointmentHoldService appointmentHoldService;
+
+  @Autowired
+  private OccupancyMap occupancyMap;
+
   public List<AvailableDateTimeAndRoomType> getAvailableTimes() {
 
+    final LocalDateTime start = getAvailabilityStart();
+    return availabilityIndex.getAvailableTimes(start, start.plusDays(AVAILABILITY_DAYS));
+
+  }
+
+  /**
+   * @return a tag that changes whenever {@link #getAvailableTimes()} would return something
+   *         different
+   */
+  public String getAvailableTimesETag() {
+
+    final LocalDateTime start = getAvailabilityStart();
+    return availabilityIndex.getETag(start, start.plusDays(AVAILABILITY_DAYS));
+
+  }
+
+  /**
+   * @return up to {@code count} of the soonest times the room type can be booked, after the given
+   *         time if there is one
+   */
+  public List<AvailableDateTimeAndRoomType> getNextAvailableTimes(final RoomType roomType,
+      final Optional<LocalDateTime> after, final int count) {
+
+    final LocalDateTime start = getAvailabilityStart();
+    return occupancyMap.findOpenStarts(roomType,
+        after.filter(time -> time.isAfter(start)).orElse(start), count);
+
+  }
+
+  private LocalDateTime getAvailabilityStart() {
+
     final LocalDateTime now = LocalDateTime.now(Clock.system(ZoneId.of(config.getTimeZone())));
     final Optional<DailyHours> hoursToday = dailyHoursService.getHoursForDay(now.toLocalDate());
     LocalDateTime start = now;
@@ -68,25 +126,10 @@ public class AppointmentService {
             LocalDateTime.of(now.toLocalDate(), hours.getClosingLocalTime().get().plusMinutes(1));
       }
     }
+    return start;
 
-    final LocalDateTime end = start.plusDays(8);
-    final List<AppointmentSlot> slots = appointmentSlotRepository
-        .findByStartBetweenAndMikvahUserOrderByStartAsc(start, end, null);
-    return slots.stream().map(this::slotToAvailableDateTimeAndRoomType).distinct().sorted()
-        .collect(Collectors.toList());
-
-  }
-
-  private AvailableDateTimeAndRoomType
-      slotToAvailableDateTimeAndRoomType(final AppointmentSlot slot) {
-
-    return AvailableDateTimeAndRoomType.builder()
-        .dateTime(slot.getStart())
-        .roomType(slot.getRoomType())
-        .build();
   }
 
-  @Transactional(isolation = Isolation.SERIALIZABLE, timeout = 10)
   public AppointmentSlotDto createAppointment(final AppointmentRequest appointmentRequest,
       final MikvahUser user) {
 
@@ -106,38 +149,45 @@ public class AppointmentService {
       }
     }
 
-    final List<AppointmentSlot> possibleSlots = appointmentSlotRepository
-        .findByStartAndRoomTypeAndMikvahUserIsNullOrderByIdAsc(requestedTime,
-            appointmentRequest.getRoomType());
-    if (CollectionUtils.isEmpty(possibleSlots)) {
-      log.warn(
-          "User {} tried to make an appointment {} but there were no appointment slots available!",
-          user,
-          appointmentRequest);
-      throw new AppointmentCreationException(
-          "There were no available appointments for the requested time. Please try a different time.");
-    }
-    final Optional<String> stripeChargeId = handleUserPayment(user);
-
-    final AppointmentSlot slot = possibleSlots.get(0);
-    slot.setMikvahUser(user);
-    slot.setNotes(appointmentRequest.getNotes());
-    if (stripeChargeId.isPresent()) {
-      slot.setStripeChargeId(stripeChargeId.get());
+    if (!occupancyMap.isOpen(requestedTime, appointmentRequest.getRoomType())) {
+      log.info("User {} tried to make an appointment at {} for {}, which is not open.", user,
+          requestedTime, appointmentRequest.getRoomType());
+      throw new AppointmentCreationException(occupancyMap
+          .findNextOpenStart(appointmentRequest.getRoomType(), requestedTime)
+          .map(next -> "There were no available appointments for the requested time. The next one is at "
+              + next.format(NEXT_OPEN_FORMAT) + ".")
+          .orElse("There were no available appointments for the requested time. Please try a different time."));
     }
-    final AppointmentSlot savedSlot = appointmentSlotRepository.save(slot);
 
-    final ReservationHistoryLog reservationHistoryLog = ReservationHistoryLog.builder()
-        .action(AppointmentAction.MADE).appointmentSlot(slot)
-        .created(LocalDateTime.now(Clock.systemUTC()))
-        .mikvahUser(user).build();
+    final AppointmentSlot heldSlot = appointmentHoldService.hold(requestedTime,
+        appointmentRequest.getRoomType(), user, appointmentRequest.getNotes());
 
-    if (stripeChargeId.isPresent()) {
-      reservationHistoryLog.setStripeId(stripeChargeId.get());
+    // No transaction is open while we wait on Stripe
+    final Optional<String> stripeChargeId;
+    try {
+      stripeChargeId = handleUserPayment(user, heldSlot);
+    } catch (final RuntimeException e) {
+      appointmentHoldService.release(heldSlot);
+      throw e;
     }
-    reservationHistoryLogRepository.save(reservationHistoryLog);
 
-    emailService.sendAppointmentConfirmationEmail(user, savedSlot);
+    final AppointmentSlot savedSlot;
+    try {
+      savedSlot = appointmentHoldService.confirm(heldSlot, stripeChargeId);
+    } catch (final RuntimeException e) {
+      log.error("Failed to confirm appointment {} after payment.", heldSlot, e);
+      if (stripeChargeId.isPresent()) {
+        final Optional<String> refundId = refundCharge(stripeChargeId.get());
+        log.info("User {} was refunded for unconfirmed appointment. Refund ID: {}", user,
+            refundId);
+      }
+      appointmentHoldService.release(heldSlot);
+      if (e instanceof AppointmentCreationException) {
+        throw e;
+      }
+      throw new AppointmentCreationException(
+          "There was a problem making your appointment. Please try again later.");
+    }
 
     log.info("User {} made appointment {}", user, savedSlot);
 
@@ -149,9 +199,57 @@ public class AppointmentService {
         .build();
   }
 
-  @Transactional(isolation = Isolation.SERIALIZABLE, timeout = 10)
+  /**
+   * Releases holds whose booking never got confirmed, for example because the server went down
+   * while waiting on Stripe, and refunds any charge that was made for them.
+   */
+  @Scheduled(initialDelay = ONE_MINUTE_IN_MILLISECONDS, fixedRate = ONE_MINUTE_IN_MILLISECONDS)
+  public void releaseExpiredHolds() {
+
+    final List<AppointmentSlot> expiredHolds = appointmentSlotRepository
+        .findByHoldExpirationBefore(LocalDateTime.now(Clock.systemUTC()));
+    for (final AppointmentSlot expiredHold : expiredHolds) {
+      if (appointmentHoldService.release(expiredHold)) {
+        refundOrphanedCharges(expiredHold);
+      }
+    }
+
+  }
+
+  private void refundOrphanedCharges(final AppointmentSlot expiredHold) {
+
+    final MikvahUser user = expiredHold.getMikvahUser();
+    if (user == null || StringUtils.isEmpty(user.getStripeCustomerId())) {
+      return;
+    }
+    final long heldSince = expiredHold.getHoldExpiration()
+        .minusMinutes(config.getAppointmentHoldMinutes()).toEpochSecond(ZoneOffset.UTC);
+    final ChargeListParams params = ChargeListParams.builder()
+        .setCustomer(user.getStripeCustomerId())
+        .setCreated(ChargeListParams.Created.builder().setGte(heldSince).build())
+        .build();
+    try {
+      for (final Charge charge : Charge.list(params).autoPagingIterable()) {
+        final String slotId = charge.getMetadata() == null ? null
+            : charge.getMetadata().get(SLOT_ID_METADATA_KEY);
+        if (String.valueOf(expiredHold.getId()).equals(slotId)
+            && Boolean.TRUE.equals(charge.getPaid())
+            && !Boolean.TRUE.equals(charge.getRefunded())) {
+          final Optional<String> refundId = refundCharge(charge.getId());
+          log.warn("Refunded charge={} for expired hold on appointment {}. Refund ID: {}",
+              charge.getId(), expiredHold, refundId);
+        }
+      }
+    } catch (final StripeException e) {
+      log.error("Failed to look up charges for expired hold on appointment {}!!!!", expiredHold,
+          e);
+    }
+
+  }
+
+  @Transactional(isolation = Isolation.READ_COMMITTED, timeout = 10)
   public AppointmentSlotDto editAppointment(long slotId, UpdateAppointmentRequest appointmentRequest) {
-    final AppointmentSlot existingSlot = appointmentSlotRepository.findById(slotId)
+    final AppointmentSlot existingSlot = appointmentSlotRepository.findByIdForUpdate(slotId)
             .orElseThrow(() -> new AppointmentCreationException("The specified appointment does not exist."));
 
     final LocalDateTime requestedTime = appointmentRequest.getTime();
@@ -160,10 +258,9 @@ public class AppointmentService {
       return updateNotes(existingSlot, appointmentRequest.getNotes());
     }
 
-    final List<AppointmentSlot> possibleSlots = appointmentSlotRepository
-            .findByStartAndRoomTypeAndMikvahUserIsNullOrderByIdAsc(requestedTime,
-                    existingSlot.getRoomType());
-    if (CollectionUtils.isEmpty(possibleSlots)) {
+    final Optional<AppointmentSlot> openSlot = appointmentHoldService
+            .claimSlot(requestedTime, existingSlot.getRoomType());
+    if (!openSlot.isPresent()) {
       log.warn(
               "Tried to reschedule appointment {} to {}, but there were no appointment slots available!",
               slotId,
@@ -172,28 +269,31 @@ public class AppointmentService {
               "There were no available appointments for the requested time. Please try a different time.");
     }
 
-    final AppointmentSlot newSlot = possibleSlots.get(0);
+    final AppointmentSlot newSlot = openSlot.get();
     newSlot.setMikvahUser(existingSlot.getMikvahUser());
     newSlot.setNotes(appointmentRequest.getNotes() == null ? existingSlot.getNotes() : appointmentRequest.getNotes());
     newSlot.setStripeChargeId(existingSlot.getStripeChargeId());
 
     final AppointmentSlot savedSlot = appointmentSlotRepository.save(newSlot);
+    availabilityIndex.slotBooked(savedSlot.getStart(), savedSlot.getRoomType());
+    occupancyMap.slotBooked(savedSlot);
 
     final ReservationHistoryLog createdLog = ReservationHistoryLog.builder()
             .action(AppointmentAction.MADE).appointmentSlot(savedSlot)
+            .appointmentStart(savedSlot.getStart())
+            .roomType(savedSlot.getRoomType())
             .created(LocalDateTime.now(Clock.systemUTC()))
             .mikvahUser(savedSlot.getMikvahUser())
             .stripeId(savedSlot.getStripeChargeId())
             .build();
     reservationHistoryLogRepository.save(createdLog);
 
-    existingSlot.setMikvahUser(null);
-    existingSlot.setNotes(null);
-    existingSlot.setStripeChargeId(null);
-    appointmentSlotRepository.save(existingSlot);
+    appointmentHoldService.freeSlot(existingSlot);
 
     final ReservationHistoryLog canceledLog = ReservationHistoryLog.builder()
-            .action(AppointmentAction.CANCELED).appointmentSlot(existingSlot)
+            .action(AppointmentAction.CANCELED)
+            .appointmentStart(existingSlot.getStart())
+            .roomType(existingSlot.getRoomType())
             .created(LocalDateTime.now(Clock.systemUTC()))
             .mikvahUser(existingSlot.getMikvahUser()).build();
     reservationHistoryLogRepository.save(canceledLog);
@@ -223,10 +323,10 @@ public class AppointmentService {
             .build();
   }
 
-  @Transactional(isolation = Isolation.SERIALIZABLE, timeout = 10)
+  @Transactional(isolation = Isolation.READ_COMMITTED, timeout = 10)
   public Optional<String> cancelAppointment(final MikvahUser user, final long slotId) {
 
-    final Optional<AppointmentSlot> existingSlot = appointmentSlotRepository.findById(slotId);
+    final Optional<AppointmentSlot> existingSlot = appointmentSlotRepository.findByIdForUpdate(slotId);
     if (!existingSlot.isPresent()) {
       return Optional.empty();
     }
@@ -257,13 +357,12 @@ public class AppointmentService {
       refundId = refundCharge(slot.getStripeChargeId());
       log.info("User {} was refunded for cancelled. Refund ID: ", user, refundId);
     }
-    slot.setMikvahUser(null);
-    slot.setStripeChargeId(null);
-    slot.setNotes(null);
-    appointmentSlotRepository.save(slot);
+    appointmentHoldService.freeSlot(slot);
 
     final ReservationHistoryLog reservationHistoryLog = ReservationHistoryLog.builder()
-        .action(AppointmentAction.CANCELED).appointmentSlot(slot)
+        .action(AppointmentAction.CANCELED)
+        .appointmentStart(slot.getStart())
+        .roomType(slot.getRoomType())
         .created(LocalDateTime.now(Clock.systemUTC()))
         .mikvahUser(user).build();
 
@@ -293,7 +392,8 @@ public class AppointmentService {
     return Optional.of(refund.getId());
   }
 
-  private Optional<String> handleUserPayment(final MikvahUser user) {
+  private Optional<String> handleUserPayment(final MikvahUser user,
+      final AppointmentSlot heldSlot) {
 
     if (user.isMember()) {
       return Optional.empty();
@@ -304,6 +404,7 @@ public class AppointmentService {
         .setAmount((long) config.getAppointmentCost())
         .setCurrency(config.getCurrency())
         .setCustomer(user.getStripeCustomerId())
+        .putMetadata(SLOT_ID_METADATA_KEY, String.valueOf(heldSlot.getId()))
         .setStatementDescriptor("Appointment").build();
     try {
       final Charge charge = Charge.create(params);
@@ -327,10 +428,10 @@ public class AppointmentService {
 
   public List<AttendentAppointmentView> getAppointmentsForAttendants(final LocalDateTime now) {
 
-    final List<AppointmentSlot> todaysSlots =
-        appointmentSlotRepository.findByStartBetweenOrderByStartAsc(
+    final List<AppointmentSlot> todaysSlots = appointmentSlotRepository
+        .findByStartBetweenAndMikvahUserIsNotNullAndHoldExpirationIsNullOrderByStartAsc(
             now.toLocalDate().atStartOfDay(), now.toLocalDate().atTime(LocalTime.MAX));
-    return todaysSlots.stream().filter(slot -> slot.getMikvahUser() != null)
+    return todaysSlots.stream()
         .map(slot -> AttendentAppointmentView.builder()
             .firstName(slot.getMikvahUser().getFirstName())
             .time(slot.getStart().toLocalTime().format(TIME_FORMAT))
@@ -343,11 +444,11 @@ public class AppointmentService {
 
   public List<AdminAppointmentView> getAppointmentsForAdmins(LocalDate date) {
 
-    final List<AppointmentSlot> slots = appointmentSlotRepository.findByStartBetweenOrderByStartAsc(date.atStartOfDay(),
-            date.atTime(LocalTime.MAX));
+    final List<AppointmentSlot> slots = appointmentSlotRepository
+            .findByStartBetweenAndMikvahUserIsNotNullAndHoldExpirationIsNullOrderByStartAsc(date.atStartOfDay(),
+                    date.atTime(LocalTime.MAX));
 
     return slots.stream()
-            .filter(slot -> slot.getMikvahUser() != null)
             .map(slot -> AdminAppointmentView.builder()
                     .id(slot.getId())
                     .title(slot.getMikvahUser().getTitle())
@@ -362,4 +463,35 @@ public class AppointmentService {
 
   }
 
+  /**
+   * Passes the booked appointments from the start of {@code from} through the end of {@code to} to
+   * the consumer in order, starting after the cursor if there is one. They're read a page at a time,
+   * so any number of them can be streamed without holding them all in memory.
+   *
+   * @return where to continue from, if the limit was reached before the end of the range
+   */
+  public Optional<AdminAppointmentCursor> forEachAppointmentForAdmins(final LocalDate from,
+      final LocalDate to, final Optional<AdminAppointmentCursor> after, final int limit,
+      final Consumer<AdminAppointmentRow> consumer) {
+
+    final LocalDateTime end = to.plusDays(1).atStartOfDay();
+    // Slot ids are never zero, so this includes slots starting right at the start of the range
+    AdminAppointmentCursor cursor = after.orElse(new AdminAppointmentCursor(from.atStartOfDay(), 0));
+    int remaining = limit;
+    while (remaining > 0) {
+      final int pageSize = Math.min(remaining, ADMIN_LIST_PAGE_SIZE);
+      final List<AdminAppointmentRow> page = appointmentSlotRepository.findBookedAfter(
+          cursor.getStart(), cursor.getId(), end, PageRequest.of(0, pageSize));
+      page.forEach(consumer);
+      if (page.size() < pageSize) {
+        return Optional.empty();
+      }
+      final AdminAppointmentRow last = page.get(page.size() - 1);
+      cursor = new AdminAppointmentCursor(last.getStart(), last.getId());
+      remaining -= pageSize;
+    }
+    return Optional.of(cursor);
+
+  }
+
 }
@@ -0,0 +1,34 @@
+package org.lamikvah.website.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.lamikvah.website.data.AvailabilityUpdate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Pushes availability changes to clients over STOMP, so they don't have to poll the availability
+ * endpoint to find out a time sold out.
+ */
+@Component
+@Slf4j
+public class AvailabilityBroadcaster {
+
+  public static final String AVAILABILITY_TOPIC = "/topic/availability";
+
+  @Autowired
+  private SimpMessagingTemplate messagingTemplate;
+
+  public void broadcast(final AvailabilityUpdate update) {
+
+    try {
+      messagingTemplate.convertAndSend(AVAILABILITY_TOPIC, update);
+    } catch (final MessagingException e) {
+      // Clients still see the change the next time they load availability
+      log.warn("Failed to broadcast availability update {}", update, e);
+    }
+
+  }
+
+}
@@ -0,0 +1,228 @@
+package org.lamikvah.website.service;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.lamikvah.website.MikvahConfiguration;
+import org.lamikvah.website.dao.AppointmentInventoryRepository;
+import org.lamikvah.website.dao.DailyHoursRepository;
+import org.lamikvah.website.data.AppointmentInventory;
+import org.lamikvah.website.data.AvailabilityUpdate;
+import org.lamikvah.website.data.AvailableDateTimeAndRoomType;
+import org.lamikvah.website.data.DailyHours;
+import org.lamikvah.website.data.RoomType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * In-memory count of open appointment slots for each start time and room type, so the public
+ * availability endpoint can be answered without going to the database. Open slots aren't stored,
+ * so they're counted from {@link SlotGrid} less the booked ones.
+ */
+@Component
+@Slf4j
+public class AvailabilityIndex {
+
+  private static final long ONE_HOUR_IN_MILLSECONDS = 3600000;
+
+  @Autowired
+  private AppointmentInventoryRepository appointmentInventoryRepository;
+
+  @Autowired
+  private DailyHoursRepository dailyHoursRepository;
+
+  @Autowired
+  private SlotGrid slotGrid;
+
+  @Autowired
+  private MikvahConfiguration config;
+
+  @Autowired
+  private AvailabilityBroadcaster broadcaster;
+
+  // Guarded by this
+  private final NavigableMap<LocalDateTime, Map<RoomType, Integer>> openSlotCounts =
+      new TreeMap<>();
+
+  private volatile Snapshot snapshot = new Snapshot(System.currentTimeMillis(),
+      ImmutableSortedMap.of());
+
+  /**
+   * Counts the open seats of every bookable day from the hours, less what's booked. Runs hourly
+   * so days come into range as the booking horizon moves forward.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  @Scheduled(initialDelay = ONE_HOUR_IN_MILLSECONDS, fixedRate = ONE_HOUR_IN_MILLSECONDS)
+  public void rebuild() {
+
+    final LocalDate today = LocalDate.now(ZoneId.of(config.getTimeZone()));
+    final LocalDate lastDay = today.plusDays(config.getBookingHorizonDays());
+
+    final NavigableMap<LocalDateTime, Map<RoomType, Integer>> counts = new TreeMap<>();
+    for (final DailyHours hours : dailyHoursRepository
+        .findByDayBetweenOrderByDayAsc(Date.valueOf(today), Date.valueOf(lastDay))) {
+      for (final AvailableDateTimeAndRoomType slot : slotGrid.getSlots(hours)) {
+        counts.computeIfAbsent(slot.getDateTime(), start -> new EnumMap<>(RoomType.class))
+            .put(slot.getRoomType(), (int) slot.getRemaining());
+      }
+    }
+    for (final AppointmentInventory booked : appointmentInventoryRepository
+        .findByStartBetweenAndBookedGreaterThan(today.atStartOfDay(),
+            lastDay.plusDays(1).atStartOfDay(), 0)) {
+      final Map<RoomType, Integer> countsForStart = counts.get(booked.getStart());
+      if (countsForStart == null) {
+        continue;
+      }
+      countsForStart.computeIfPresent(booked.getRoomType(),
+          (roomType, seats) -> seats > booked.getBooked() ? seats - booked.getBooked() : null);
+      if (countsForStart.isEmpty()) {
+        counts.remove(booked.getStart());
+      }
+    }
+
+    // A booking that commits while the query above is running may be counted twice. The next
+    // rebuild corrects it, and booking itself never trusts the index.
+    synchronized (this) {
+      openSlotCounts.clear();
+      openSlotCounts.putAll(counts);
+      publishSnapshot();
+    }
+    log.debug("Rebuilt availability index with {} open start times.", counts.size());
+
+  }
+
+  /**
+   * Returns the open start times and room types between {@code start} and {@code end},
+   * inclusive, sorted by time and then room type.
+   */
+  public List<AvailableDateTimeAndRoomType> getAvailableTimes(final LocalDateTime start,
+      final LocalDateTime end) {
+
+    return snapshot.times.subMap(start, true, end, true).values().stream()
+        .flatMap(List::stream)
+        .collect(Collectors.toList());
+
+  }
+
+  /**
+   * Returns a tag that changes whenever {@link #getAvailableTimes} would return something
+   * different for the same window. It starts from the current time, so it keeps changing across
+   * restarts.
+   */
+  public String getETag(final LocalDateTime start, final LocalDateTime end) {
+
+    final Snapshot current = snapshot;
+    final NavigableMap<LocalDateTime, ImmutableList<AvailableDateTimeAndRoomType>> times =
+        current.times.subMap(start, true, end, true);
+    if (times.isEmpty()) {
+      return "availability-" + current.version;
+    }
+    return "availability-" + current.version + "-" + times.firstKey() + "-" + times.lastKey();
+
+  }
+
+  /**
+   * Records that a slot was taken. Applied and broadcast once the surrounding transaction commits.
+   */
+  public void slotBooked(final LocalDateTime start, final RoomType roomType) {
+
+    afterCommit(() -> broadcaster.broadcast(adjust(start, roomType, -1)));
+  }
+
+  /**
+   * Records that a slot was given back. Applied and broadcast once the surrounding transaction
+   * commits.
+   */
+  public void slotReleased(final LocalDateTime start, final RoomType roomType) {
+
+    afterCommit(() -> broadcaster.broadcast(adjust(start, roomType, 1)));
+  }
+
+  private synchronized AvailabilityUpdate adjust(final LocalDateTime start,
+      final RoomType roomType, final int delta) {
+
+    final Map<RoomType, Integer> countsForStart =
+        openSlotCounts.computeIfAbsent(start, s -> new EnumMap<>(RoomType.class));
+    final int count = Math.max(0, countsForStart.getOrDefault(roomType, 0) + delta);
+    if (count == 0) {
+      countsForStart.remove(roomType);
+    } else {
+      countsForStart.put(roomType, count);
+    }
+    if (countsForStart.isEmpty()) {
+      openSlotCounts.remove(start);
+    }
+    publishSnapshot();
+
+    return AvailabilityUpdate.builder()
+        .dateTime(start)
+        .roomType(roomType)
+        .remaining(count)
+        .version(snapshot.version)
+        .build();
+
+  }
+
+  private void publishSnapshot() {
+
+    final ImmutableSortedMap.Builder<LocalDateTime, ImmutableList<AvailableDateTimeAndRoomType>>
+        builder = ImmutableSortedMap.naturalOrder();
+    openSlotCounts.forEach((start, countsForStart) -> builder.put(start,
+        countsForStart.entrySet().stream()
+            .map(count -> AvailableDateTimeAndRoomType.builder()
+                .dateTime(start)
+                .roomType(count.getKey())
+                .remaining(count.getValue())
+                .build())
+            .collect(ImmutableList.toImmutableList())));
+    snapshot = new Snapshot(snapshot.version + 1, builder.build());
+
+  }
+
+  private void afterCommit(final Runnable update) {
+
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      update.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+
+        update.run();
+      }
+    });
+
+  }
+
+  private static final class Snapshot {
+
+    private final long version;
+    private final ImmutableSortedMap<LocalDateTime,
+        ImmutableList<AvailableDateTimeAndRoomType>> times;
+
+    private Snapshot(final long version, final ImmutableSortedMap<LocalDateTime,
+        ImmutableList<AvailableDateTimeAndRoomType>> times) {
+
+      this.version = version;
+      this.times = times;
+    }
+
+  }
+
+}
@@ -1,8 +1,12 @@
 package org.lamikvah.website.service;
 
+import java.time.Clock;
+import java.time.LocalDateTime;
 import java.util.Optional;
 
+import org.lamikvah.website.dao.CreditCardSnapshotRepository;
 import org.lamikvah.website.data.CreditCard;
+import org.lamikvah.website.data.CreditCardSnapshot;
 import org.lamikvah.website.data.Membership;
 import org.lamikvah.website.data.MikvahUser;
 import org.lamikvah.website.exception.ServerErrorException;
@@ -42,6 +46,9 @@ public class CreditCardService {
     @Autowired
     private MembershipService membershipService;
 
+    @Autowired
+    private CreditCardSnapshotRepository creditCardSnapshotRepository;
+
     public void addNewCreditCard(final MikvahUser user, final String token) {
 
         boolean isUsersFirstCreditCard = false;
@@ -51,7 +58,11 @@ public class CreditCardService {
                 isUsersFirstCreditCard = true;
                 createCustomer(user);
             }
-            createCard(user, token);
+            final PaymentSource source = createCard(user, token);
+            // The new card is now the default, so it can be saved without asking Stripe again
+            saveSnapshot(user.getStripeCustomerId(), Optional.of(source)
+                    .filter(Card.class::isInstance)
+                    .map(Card.class::cast));
         } catch (final AuthenticationException e) {
             log.error("STRIPE: Failure to properly authenticate yourself in the request.", e);
             throw new ServerErrorException(ERROR_MESSAGE, e);
@@ -83,19 +94,34 @@ public class CreditCardService {
 
     }
 
+    /**
+     * Served from the local snapshot. Only customers that have no snapshot yet, which were created
+     * before snapshots existed, are looked up in Stripe, once.
+     */
     public Optional<CreditCard> getCreditCard(final MikvahUser user) {
 
         if (StringUtils.isEmpty(user.getStripeCustomerId()))
             return Optional.empty();
+        final Optional<CreditCardSnapshot> snapshot = creditCardSnapshotRepository.findById(user.getStripeCustomerId());
+        if (snapshot.isPresent()) {
+            return snapshot.get().toCreditCard();
+        }
+        return refreshCreditCard(user.getStripeCustomerId());
+    }
+
+    /**
+     * Replaces the snapshot of the customer's default card with what Stripe currently has.
+     */
+    public Optional<CreditCard> refreshCreditCard(final String customerId) {
+
         try {
-            final Customer customer = Customer.retrieve(user.getStripeCustomerId());
-            return customer.getSources().getData().stream()
-                    .filter(source -> source.getId().equals(customer.getDefaultSource())).map(externalAccount -> {
-                        final Card card = (Card) externalAccount;
-                        return CreditCard.builder().brand(card.getBrand())
-                                .expirationMonth(card.getExpMonth().intValue())
-                                .expirationYear(card.getExpYear().intValue()).last4(card.getLast4()).build();
-                    }).findFirst();
+            final Customer customer = Customer.retrieve(customerId);
+            final Optional<Card> card = customer.getSources().getData().stream()
+                    .filter(source -> source.getId().equals(customer.getDefaultSource()))
+                    .filter(Card.class::isInstance)
+                    .map(Card.class::cast)
+                    .findFirst();
+            return saveSnapshot(customerId, card);
 
         } catch (final StripeException e) {
             log.error("There was an error getting the credit card information.", e);
@@ -103,7 +129,25 @@ public class CreditCardService {
         }
     }
 
-    private void createCard(final MikvahUser user, final String token) throws AuthenticationException,
+    private Optional<CreditCard> saveSnapshot(final String customerId, final Optional<Card> card) {
+
+        final CreditCardSnapshot snapshot = CreditCardSnapshot.builder()
+                .stripeCustomerId(customerId)
+                .updated(LocalDateTime.now(Clock.systemUTC()))
+                .build();
+        if (card.isPresent()) {
+            snapshot.setBrand(card.get().getBrand());
+            snapshot.setLast4(card.get().getLast4());
+            snapshot.setExpirationMonth(card.get().getExpMonth().intValue());
+            snapshot.setExpirationYear(card.get().getExpYear().intValue());
+        }
+        creditCardSnapshotRepository.save(snapshot);
+        log.debug("Saved credit card snapshot {}", snapshot);
+        return snapshot.toCreditCard();
+
+    }
+
+    private PaymentSource createCard(final MikvahUser user, final String token) throws AuthenticationException,
             InvalidRequestException, ApiConnectionException, CardException, ApiException, StripeException {
 
         final String customerId = user.getStripeCustomerId();
@@ -112,6 +156,7 @@ public class CreditCardService {
                 .setSource(token).build();
         final PaymentSource source = customer.getSources().create(params);
         setDefaultCard(customerId, source.getId());
+        return source;
 
     }
 
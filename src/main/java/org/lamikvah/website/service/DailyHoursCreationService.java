@@ -7,34 +7,25 @@ import java.sql.Time;
 import java.time.DayOfWeek;
 import java.time.Duration;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.time.LocalTime;
-import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.time.temporal.TemporalAdjusters;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
-import java.util.TimeZone;
 import lombok.extern.slf4j.Slf4j;
-import org.lamikvah.website.MikvahConfiguration;
 import org.lamikvah.website.dao.DailyHoursRepository;
 import org.lamikvah.website.data.DailyHours;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import net.sourceforge.zmanim.ComplexZmanimCalendar;
 import net.sourceforge.zmanim.hebrewcalendar.JewishCalendar;
-import net.sourceforge.zmanim.util.GeoLocation;
 
 @Component
 @Slf4j
 public class DailyHoursCreationService {
 
-  // This is the local time zone, it is cached here after being set by getTimezone
-  private ZoneId timezone = null;
-
   private static final long ONE_HOUR = 3600000; // in milliseconds
 
   static final Set<Integer> YOM_TOV_INDEXES = Sets.newHashSet(JewishCalendar.PESACH,
@@ -61,23 +52,70 @@ public class DailyHoursCreationService {
 
   private static final int OPEN_EARLY_MINUTES = 45;
 
+  /**
+   * Increment this when changing how hours are calculated, so existing hours get recalculated.
+   */
+  private static final int RULES_VERSION = 1;
+
   @Autowired
   private DailyHoursRepository repo;
 
   @Autowired
-  private MikvahConfiguration config;
+  private ZmanimCache zmanimCache;
+
+  @Autowired
+  private MaterializationWatermarkService watermarks;
 
+  @Autowired
+  private DailyHoursService dailyHoursService;
+
+  @Autowired
+  private AvailabilityIndex availabilityIndex;
+
+  @Autowired
+  private OccupancyMap occupancyMap;
+
+  /**
+   * Calculates hours for the days in the next 3 weeks that haven't been calculated yet, which is
+   * usually nothing except when a new week comes into range.
+   */
   @Scheduled(initialDelay = ONE_HOUR, fixedRate = ONE_HOUR)
   public void createHoursForNext3Weeks() {
 
-    log.debug("Calculating hours for next 3 weeks.");
+    final LocalDate firstSunday =
+        LocalDate.now().with(TemporalAdjusters.previous(DayOfWeek.SUNDAY));
+    final LocalDate lastDay = firstSunday.plusWeeks(3).minusDays(1);
+    final String fingerprint = getRulesFingerprint();
+
+    // Hours depend on the whole week, so start from the Sunday of the first day not yet calculated
+    LocalDate sunday = watermarks
+        .getMaterializedThrough(MaterializationWatermarkService.DAILY_HOURS, fingerprint)
+        .map(through -> through.plusDays(1).with(TemporalAdjusters.previousOrSame(DayOfWeek.SUNDAY)))
+        .filter(start -> start.isAfter(firstSunday))
+        .orElse(firstSunday);
+    if (sunday.isAfter(lastDay)) {
+      log.debug("Hours are already calculated through {}", lastDay);
+      return;
+    }
 
-    LocalDate start = LocalDate.now().with(TemporalAdjusters.previous(DayOfWeek.SUNDAY));
-    calculateHoursForWeek(start);
-    for (int i = 0; i < 2; i++) {
-      start = start.with(TemporalAdjusters.next(DayOfWeek.SUNDAY));
-      calculateHoursForWeek(start);
+    log.debug("Calculating hours from {} through {}.", sunday, lastDay);
+    for (; sunday.isBefore(lastDay); sunday = sunday.plusWeeks(1)) {
+      calculateHoursForWeek(sunday);
     }
+    watermarks.advance(MaterializationWatermarkService.DAILY_HOURS, lastDay, fingerprint);
+    availabilityIndex.rebuild();
+    occupancyMap.rebuild();
+
+  }
+
+  /**
+   * Recalculates hours starting from the given day, such as after an admin changes something
+   * that affects them.
+   */
+  public void recalculateHoursFrom(final LocalDate day) {
+
+    watermarks.invalidateFrom(MaterializationWatermarkService.DAILY_HOURS, day);
+    createHoursForNext3Weeks();
 
   }
 
@@ -99,10 +137,22 @@ public class DailyHoursCreationService {
       }
       log.info("Created hours: {}", hours);
       repo.save(hours);
+      dailyHoursService.evict(dayContext.getDate());
     }
 
   }
 
+  /**
+   * Changes whenever the rules for calculating hours change, so that all hours are recalculated.
+   */
+  private String getRulesFingerprint() {
+
+    return String.join(":", String.valueOf(RULES_VERSION), zmanimCache.getTimezone().getId(),
+        LATEST_CLOSING_TIME.toString(), EARLIEST_CLOSING_TIME.toString(),
+        MINIMUM_OPEN_DURARTION.toString(), String.valueOf(OPEN_EARLY_MINUTES));
+
+  }
+
   private DailyHours createHoursForDay(final DayContext dayContext) {
 
     final DailyHours hours = new DailyHours();
@@ -209,21 +259,17 @@ public class DailyHoursCreationService {
     final List<DayContext> contexts = new ArrayList<>(7);
     for (int i = 0; i < 7; i++) {
       final LocalDate currentDay = sunday.plusDays(i);
-      final ComplexZmanimCalendar zmanimCalendar = createCalendar(currentDay);
       final LocalDate nextDay = currentDay.plusDays(1);
-      final JewishCalendar jewishCalendarNextDay = new JewishCalendar(
-          java.util.Date.from(nextDay.atStartOfDay(getTimezone()).toInstant()));
-      final JewishCalendar jewishCalendarCurrentDay = new JewishCalendar(
-          java.util.Date.from(currentDay.atStartOfDay(getTimezone()).toInstant()));
 
-      final int currentDayYomTovIndex = jewishCalendarCurrentDay.getYomTovIndex();
-      final int nextDayYomTovIndex = jewishCalendarNextDay.getYomTovIndex();
+      final int currentDayYomTovIndex = zmanimCache.getYomTovIndex(currentDay);
+      final int nextDayYomTovIndex = zmanimCache.getYomTovIndex(nextDay);
 
       final DayContext context = DayContext.builder()
           .date(currentDay)
           .latestTzeisForWeekRoundedUpToNearestFiveMinutes(latestTzeis)
-          .candleLighting(convertDateToLocalTime(zmanimCalendar.getCandleLighting()))
-          .isLeilShabbosOrLeilYomTov(isLeilYomTovOrShabbos(currentDay, jewishCalendarNextDay))
+          .candleLighting(
+              zmanimCache.getCandleLighting(currentDay).truncatedTo(ChronoUnit.MINUTES))
+          .isLeilShabbosOrLeilYomTov(isLeilYomTovOrShabbos(currentDay, nextDayYomTovIndex))
           .isLeilPurim(nextDayYomTovIndex == JewishCalendar.PURIM)
           .isLeilYomKippurOrLeilTishaBav(nextDayYomTovIndex == JewishCalendar.TISHA_BEAV
               || nextDayYomTovIndex == JewishCalendar.YOM_KIPPUR)
@@ -231,28 +277,19 @@ public class DailyHoursCreationService {
               || YOM_TOV_INDEXES.contains(currentDayYomTovIndex))
           .isMotzeiYomKippur(currentDayYomTovIndex == JewishCalendar.YOM_KIPPUR)
           .isMotzeiTishaBav(currentDayYomTovIndex == JewishCalendar.TISHA_BEAV)
-          .tzeis(convertDateToLocalTime(zmanimCalendar.getTzais()))
+          .tzeis(zmanimCache.getTzeis(currentDay).truncatedTo(ChronoUnit.MINUTES))
           .build();
       contexts.add(context);
     }
     return contexts;
   }
 
-  private LocalTime convertDateToLocalTime(final java.util.Date date) {
-
-    return LocalDateTime.ofInstant(date.toInstant(), getTimezone()).toLocalTime()
-        .truncatedTo(ChronoUnit.MINUTES);
-  }
-
   private LocalTime getLatestTzaisForWeek(final LocalDate sunday) {
 
     LocalTime latestTzais = LocalTime.MIN;
 
     for (int i = 0; i < 7; i++) {
-      final LocalDate day = sunday.plusDays(i);
-      final ComplexZmanimCalendar zmanimCalendar = createCalendar(day);
-      final LocalTime tzais =
-          zmanimCalendar.getTzais().toInstant().atZone(getTimezone()).toLocalTime();
+      final LocalTime tzais = zmanimCache.getTzeis(sunday.plusDays(i));
       if (tzais.isAfter(latestTzais)) {
         latestTzais = tzais;
       }
@@ -276,43 +313,12 @@ public class DailyHoursCreationService {
     return adjusted;
   }
 
-  private boolean isLeilYomTovOrShabbos(final LocalDate date, final JewishCalendar nextDay) {
+  private boolean isLeilYomTovOrShabbos(final LocalDate date, final int nextDayYomTovIndex) {
 
     if (date.getDayOfWeek() == DayOfWeek.FRIDAY) {
       return true;
     }
-    final int yomTovIndex = nextDay.getYomTovIndex();
-    return YOM_TOV_INDEXES.contains(yomTovIndex);
-
-  }
+    return YOM_TOV_INDEXES.contains(nextDayYomTovIndex);
 
-  private ComplexZmanimCalendar createCalendar() {
-
-    final String locationName = "Los Angeles, CA";
-    final double latitude = 34.0549987; // Los Angeles, CA
-    final double longitude = -118.3969812; // Los Angeles, CA
-    final double elevation = 65; // optional elevation
-    final TimeZone timeZone = TimeZone.getTimeZone(config.getTimeZone());
-    final GeoLocation location =
-        new GeoLocation(locationName, latitude, longitude, elevation, timeZone);
-    return new ComplexZmanimCalendar(location);
-
-  }
-
-  private ComplexZmanimCalendar createCalendar(final LocalDate day) {
-
-    final ComplexZmanimCalendar complexZmanimCalendar = createCalendar();
-    complexZmanimCalendar.getCalendar().set(day.getYear(), day.getMonthValue() - 1,
-        day.getDayOfMonth());
-    return complexZmanimCalendar;
-
-  }
-
-  private ZoneId getTimezone() {
-
-    if (timezone == null) {
-      timezone = ZoneId.of(config.getTimeZone());
-    }
-    return timezone;
   }
 }
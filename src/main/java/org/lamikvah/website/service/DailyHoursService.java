@@ -2,11 +2,15 @@ package org.lamikvah.website.service;
 
 import java.sql.Date;
 import java.time.DayOfWeek;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.time.temporal.TemporalAdjusters;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
 
 import org.lamikvah.website.MikvahConfiguration;
 import org.lamikvah.website.dao.DailyHoursRepository;
@@ -14,27 +18,81 @@ import org.lamikvah.website.data.DailyHours;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Hours are only written by {@link DailyHoursCreationService}, which evicts what it changes, so
+ * they are served from memory. The cached objects are shared and must not be modified.
+ */
 @Component
 public class DailyHoursService {
 
+    /**
+     * A safety net in case hours are ever changed without going through eviction.
+     */
+    private static final Duration EXPIRATION = Duration.ofDays(1);
+
     @Autowired private DailyHoursRepository repo;
     @Autowired private MikvahConfiguration config;
-    
+    @Autowired private MeterRegistry meterRegistry;
+
+    private final LoadingCache<LocalDate, Optional<DailyHours>> hoursByDay = Caffeine.newBuilder()
+            .maximumSize(366)
+            .expireAfterWrite(EXPIRATION)
+            .recordStats()
+            .build(day -> repo.findById(Date.valueOf(day)));
+
+    // Keyed by the Sunday the week starts on
+    private final LoadingCache<LocalDate, List<DailyHours>> hoursByWeek = Caffeine.newBuilder()
+            .maximumSize(10)
+            .expireAfterWrite(EXPIRATION)
+            .recordStats()
+            .build(sunday -> repo.findByDayBetweenOrderByDayAsc(Date.valueOf(sunday), Date.valueOf(sunday.plusWeeks(1))));
+
+    // Starts from the current time so tags from before a restart aren't reused
+    private final AtomicLong version = new AtomicLong(System.currentTimeMillis());
+
+    @PostConstruct
+    public void registerMetrics() {
+        CaffeineCacheMetrics.monitor(meterRegistry, hoursByDay, "dailyHoursByDay");
+        CaffeineCacheMetrics.monitor(meterRegistry, hoursByWeek, "dailyHoursByWeek");
+    }
+
     public List<DailyHours> getHoursForCurrentWeek(){
         
         LocalDate startLocalDate = LocalDate.now(ZoneId.of(config.getTimeZone())).with(TemporalAdjusters.previousOrSame(DayOfWeek.SUNDAY));
-        LocalDate endLocalDate = startLocalDate.plusWeeks(1);
-        
-        Date start = Date.valueOf(startLocalDate);
-        Date end = Date.valueOf(endLocalDate);
-        
-        return repo.findByDayBetweenOrderByDayAsc(start, end);
+        return hoursByWeek.get(startLocalDate);
+    }
+
+    /**
+     * @return a tag that changes whenever {@link #getHoursForCurrentWeek()} would return something different
+     */
+    public String getCurrentWeekETag() {
+
+        LocalDate startLocalDate = LocalDate.now(ZoneId.of(config.getTimeZone())).with(TemporalAdjusters.previousOrSame(DayOfWeek.SUNDAY));
+        return "hours-" + version.get() + "-" + startLocalDate;
     }
     
     public Optional<DailyHours> getHoursForDay(LocalDate date) {
-        Date desiredDate = Date.valueOf(date);
-        return repo.findById(desiredDate);
+        return hoursByDay.get(date);
+    }
+
+    /**
+     * Must be called after the hours for a day are written.
+     */
+    public void evict(LocalDate date) {
+        hoursByDay.invalidate(date);
+        LocalDate sunday = date.with(TemporalAdjusters.previousOrSame(DayOfWeek.SUNDAY));
+        hoursByWeek.invalidate(sunday);
+        if (date.equals(sunday)) {
+            // Each week also includes the Sunday after it
+            hoursByWeek.invalidate(sunday.minusWeeks(1));
+        }
+        version.incrementAndGet();
     }
-    
     
 }
@@ -0,0 +1,125 @@
+package org.lamikvah.website.service;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * What each email template can show. Values are formatted for display before they get here.
+ */
+public final class EmailContexts {
+
+  /**
+   * For emails that don't show anything specific to the recipient.
+   */
+  public static final Object EMPTY = new Object();
+
+  private EmailContexts() {
+  }
+
+  @Value
+  @Builder
+  public static class AppointmentConfirmation {
+
+    Long appointmentSlotId;
+
+    String fullName;
+
+    String isoStartTime;
+
+    String isoModifiedTime;
+
+    String startDateTime;
+
+    boolean ccCharged;
+
+    String cardType;
+
+    String last4;
+
+    String confirmationCode;
+
+    String amount;
+  }
+
+  @Value
+  @Builder
+  public static class AppointmentCancellation {
+
+    Long appointmentSlotId;
+
+    String fullName;
+
+    String isoStartTime;
+
+    String isoModifiedTime;
+
+    String startDateTime;
+
+    boolean ccRefunded;
+
+    String confirmationCode;
+
+    String amount;
+  }
+
+  @Value
+  @Builder
+  public static class MembershipPayment {
+
+    String level;
+
+    String expirationDate;
+
+    String last4;
+
+    boolean autoRenewEnabled;
+
+    String date;
+
+    String amount;
+  }
+
+  @Value
+  public static class CreditCardUpdate {
+
+    boolean isAutoRenewingMember;
+  }
+
+  @Value
+  public static class AutoRenewChange {
+
+    String expirationDate;
+  }
+
+  @Value
+  public static class UpcomingRenewal {
+
+    String renewalDate;
+
+    String amount;
+  }
+
+  @Value
+  @Builder
+  public static class Donation {
+
+    String name;
+
+    String donorEmail;
+
+    String amount;
+
+    String date;
+  }
+
+  @Value
+  public static class MembershipNotification {
+
+    String name;
+
+    String amount;
+
+    String date;
+  }
+
+}
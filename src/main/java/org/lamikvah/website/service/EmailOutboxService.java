@@ -0,0 +1,109 @@
+package org.lamikvah.website.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.lamikvah.website.dao.EmailOutboxRepository;
+import org.lamikvah.website.data.OutboxEmail;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * The database side of the email outbox. Emails are claimed with a lease, so they can be sent
+ * outside of any transaction and are picked up again if the worker dies while sending.
+ */
+@Component
+@Slf4j
+public class EmailOutboxService {
+
+  static final int MAX_ATTEMPTS = 10;
+
+  /**
+   * Longer than sending a whole batch should ever take
+   */
+  private static final Duration LEASE = Duration.ofMinutes(5);
+
+  @Autowired
+  private EmailOutboxRepository repo;
+
+  /**
+   * Joins the caller's transaction, so the email is only sent if the change it is about commits.
+   */
+  @Transactional
+  public void enqueue(final OutboxEmail email) {
+
+    final LocalDateTime now = LocalDateTime.now(Clock.systemUTC());
+    email.setCreated(now);
+    email.setNextAttempt(now);
+    final OutboxEmail savedEmail = repo.save(email);
+    log.debug("Queued email {} with subject \"{}\"", savedEmail.getId(), savedEmail.getSubject());
+
+  }
+
+  /**
+   * Claims up to {@code limit} due emails, counting this as an attempt for each of them.
+   */
+  @Transactional
+  public List<OutboxEmail> claimDueEmails(final int limit) {
+
+    final LocalDateTime now = LocalDateTime.now(Clock.systemUTC());
+    final List<OutboxEmail> emails = repo.findDueForUpdate(now, limit);
+    for (final OutboxEmail email : emails) {
+      email.setAttempts(email.getAttempts() + 1);
+      email.setNextAttempt(now.plus(LEASE));
+    }
+    repo.saveAll(emails);
+    return emails;
+
+  }
+
+  @Transactional
+  public void markSent(final OutboxEmail email) {
+
+    repo.markSent(email.getId(), LocalDateTime.now(Clock.systemUTC()));
+
+  }
+
+  @Transactional
+  public void markFailed(final OutboxEmail email, final Duration retryAfter, final String error) {
+
+    repo.markFailed(email.getId(), LocalDateTime.now(Clock.systemUTC()).plus(retryAfter), error);
+
+  }
+
+  /**
+   * Stops retrying the email. It's kept until it's purged, so it can still be looked into.
+   */
+  @Transactional
+  public void markGivenUp(final OutboxEmail email, final String error) {
+
+    repo.markGivenUp(email.getId(), LocalDateTime.now(Clock.systemUTC()), error);
+
+  }
+
+  public long countUnsent() {
+
+    return repo.countUnsent();
+
+  }
+
+  public long countGivenUp() {
+
+    return repo.countByFailedIsNotNull();
+
+  }
+
+  /**
+   * Deletes the emails that were sent or given up on before the given time.
+   */
+  @Transactional
+  public int deleteFinishedBefore(final LocalDateTime before) {
+
+    return repo.deleteFinishedBefore(before);
+
+  }
+
+}
@@ -0,0 +1,184 @@
+package org.lamikvah.website.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import javax.mail.Message.RecipientType;
+import javax.mail.internet.AddressException;
+import javax.mail.internet.InternetAddress;
+import lombok.extern.slf4j.Slf4j;
+import org.lamikvah.website.MikvahConfiguration;
+import org.lamikvah.website.data.OutboxEmail;
+import org.simplejavamail.email.Email;
+import org.simplejavamail.email.EmailBuilder;
+import org.simplejavamail.email.Recipient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sends the emails in the outbox on a small pool of threads, retrying failures with exponential
+ * backoff.
+ */
+@Component
+@Slf4j
+public class EmailOutboxWorker {
+
+  private static final long TWO_SECONDS = 2000;
+
+  private static final long TWENTY_FOUR_HOURS = 86400000;
+
+  private static final Duration FIRST_RETRY = Duration.ofSeconds(30);
+
+  private static final Duration LONGEST_RETRY = Duration.ofHours(1);
+
+  private static final Duration LONGEST_RUN = Duration.ofSeconds(30);
+
+  private static final int DAYS_TO_KEEP_FINISHED_EMAILS = 30;
+
+  @Autowired
+  private EmailOutboxService outbox;
+
+  @Autowired
+  private SmtpConnectionPool smtp;
+
+  private final MikvahConfiguration config;
+
+  private final ExecutorService senders;
+
+  private final AtomicLong unsentEmails = new AtomicLong();
+
+  private final AtomicLong failedEmails = new AtomicLong();
+
+  private final Timer sendTimer;
+
+  private final Timer deliveryDelayTimer;
+
+  private final Counter failures;
+
+  private final Counter givenUp;
+
+  public EmailOutboxWorker(final MikvahConfiguration config, final MeterRegistry meterRegistry) {
+
+    this.config = config;
+    senders = Executors.newFixedThreadPool(config.getEmailWorkerThreads(),
+        new ThreadFactoryBuilder().setNameFormat("email-sender-%d").build());
+    meterRegistry.gauge("mikvah.email.outbox.depth", unsentEmails);
+    sendTimer = meterRegistry.timer("mikvah.email.send");
+    deliveryDelayTimer = meterRegistry.timer("mikvah.email.outbox.delay");
+    meterRegistry.gauge("mikvah.email.outbox.failed", failedEmails);
+    failures = meterRegistry.counter("mikvah.email.send.failures");
+    givenUp = meterRegistry.counter("mikvah.email.given_up");
+  }
+
+  /**
+   * Sends due emails a batch at a time. A full batch means more are waiting, so another is
+   * claimed right away, up to a time limit that gives other scheduled jobs a turn during a large
+   * backlog.
+   */
+  @Scheduled(initialDelay = TWO_SECONDS, fixedDelay = TWO_SECONDS)
+  public void sendDueEmails() {
+
+    final long startNanos = System.nanoTime();
+    List<OutboxEmail> batch;
+    do {
+      batch = outbox.claimDueEmails(config.getEmailBatchSize());
+      final List<CompletableFuture<Void>> sends = new ArrayList<>(batch.size());
+      for (final OutboxEmail email : batch) {
+        sends.add(CompletableFuture.runAsync(() -> send(email), senders));
+      }
+      CompletableFuture.allOf(sends.toArray(new CompletableFuture[0])).join();
+    } while (batch.size() == config.getEmailBatchSize()
+        && System.nanoTime() - startNanos < LONGEST_RUN.toNanos());
+
+    unsentEmails.set(outbox.countUnsent());
+    failedEmails.set(outbox.countGivenUp());
+
+  }
+
+  @Scheduled(initialDelay = TWENTY_FOUR_HOURS, fixedRate = TWENTY_FOUR_HOURS)
+  public void deleteOldEmails() {
+
+    final int deleted = outbox.deleteFinishedBefore(
+        LocalDateTime.now(Clock.systemUTC()).minusDays(DAYS_TO_KEEP_FINISHED_EMAILS));
+    log.info("Deleted {} sent and failed emails from the outbox.", deleted);
+
+  }
+
+  private void send(final OutboxEmail outboxEmail) {
+
+    final long startNanos = System.nanoTime();
+    try {
+      smtp.send(toEmail(outboxEmail));
+      sendTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+      deliveryDelayTimer.record(
+          Duration.between(outboxEmail.getCreated(), LocalDateTime.now(Clock.systemUTC())));
+      outbox.markSent(outboxEmail);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      outbox.markFailed(outboxEmail, FIRST_RETRY, "Interrupted while sending");
+    } catch (final Exception e) {
+      failures.increment();
+      final int attempts = outboxEmail.getAttempts();
+      final String error = String.valueOf(e.getMessage());
+      if (attempts >= EmailOutboxService.MAX_ATTEMPTS) {
+        log.error("Giving up on email {} \"{}\" after {} attempts.", outboxEmail.getId(),
+            outboxEmail.getSubject(), attempts, e);
+        givenUp.increment();
+        outbox.markGivenUp(outboxEmail, error);
+      } else {
+        log.warn("Failed to send email {} \"{}\" on attempt {}, will retry.", outboxEmail.getId(),
+            outboxEmail.getSubject(), attempts, e);
+        outbox.markFailed(outboxEmail, getRetryDelay(attempts), error);
+      }
+    }
+
+  }
+
+  private Duration getRetryDelay(final int attempts) {
+
+    final Duration delay = FIRST_RETRY.multipliedBy(1L << Math.min(attempts - 1, 16));
+    return delay.compareTo(LONGEST_RETRY) > 0 ? LONGEST_RETRY : delay;
+
+  }
+
+  private Email toEmail(final OutboxEmail outboxEmail) throws AddressException {
+
+    final List<Recipient> recipients =
+        Arrays.stream(InternetAddress.parse(outboxEmail.getRecipients()))
+            .map(address -> new Recipient(address.getPersonal(), address.getAddress(),
+                RecipientType.TO))
+            .collect(Collectors.toList());
+
+    return EmailBuilder.startingBlank()
+        .from("Los Angeles Mikvah Society", config.getFromEmailAddress())
+        .to(recipients)
+        .withSubject(outboxEmail.getSubject())
+        .withPlainText(outboxEmail.getTextBody())
+        .withHTMLText(outboxEmail.getHtmlBody())
+        .buildEmail();
+
+  }
+
+  @PreDestroy
+  public void shutdown() {
+
+    senders.shutdown();
+
+  }
+
+}
@@ -1,23 +1,26 @@
 package org.lamikvah.website.service;
 
-import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.LoadingCache;
-import com.github.mustachejava.DefaultMustacheFactory;
-import com.github.mustachejava.Mustache;
-import com.github.mustachejava.MustacheFactory;
 import com.stripe.model.Invoice;
-import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.text.NumberFormat;
+import java.time.Clock;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import javax.annotation.PostConstruct;
+import javax.mail.internet.InternetAddress;
 import lombok.extern.slf4j.Slf4j;
 import org.lamikvah.website.MikvahConfiguration;
 import org.lamikvah.website.dao.MikvahUserRepository;
@@ -25,33 +28,46 @@ import org.lamikvah.website.data.AppointmentSlot;
 import org.lamikvah.website.data.CreditCard;
 import org.lamikvah.website.data.Membership;
 import org.lamikvah.website.data.MikvahUser;
-import org.simplejavamail.email.Email;
-import org.simplejavamail.email.EmailBuilder;
+import org.lamikvah.website.data.OutboxEmail;
+import org.lamikvah.website.service.EmailContexts.AppointmentCancellation;
+import org.lamikvah.website.service.EmailContexts.AppointmentConfirmation;
+import org.lamikvah.website.service.EmailContexts.AutoRenewChange;
+import org.lamikvah.website.service.EmailContexts.CreditCardUpdate;
+import org.lamikvah.website.service.EmailContexts.Donation;
+import org.lamikvah.website.service.EmailContexts.MembershipNotification;
+import org.lamikvah.website.service.EmailContexts.MembershipPayment;
+import org.lamikvah.website.service.EmailContexts.UpcomingRenewal;
+import org.lamikvah.website.service.EmailTemplateRenderer.RenderedEmail;
 import org.simplejavamail.email.Recipient;
-import org.simplejavamail.mailer.Mailer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
+/**
+ * Renders emails and puts them in the outbox, as part of the caller's transaction when there is
+ * one. {@link EmailOutboxWorker} sends them.
+ */
 @Slf4j
 @Component
 public class EmailService {
 
-  private static final String EXPIRATION_DATE = "expirationDate";
-
-  private static final String AMOUNT = "amount";
-
-  private static final String LAST4 = "last4";
-
-  private static final int CENTS_PER_DOLLAR = 100;
+  private static final int CENTS_DECIMAL_PLACES = 2;
 
   private static final DateTimeFormatter FRIENDLY_FORMAT = DateTimeFormatter
       .ofPattern("EEEE, MMMM, d, yyyy 'at' h:mm a");
 
+  /**
+   * NumberFormat isn't thread-safe, so each thread gets its own.
+   */
+  private static final ThreadLocal<NumberFormat> CURRENCY_FORMAT =
+      ThreadLocal.withInitial(() -> NumberFormat.getCurrencyInstance(Locale.US));
+
   @Autowired
-  private Mailer mailer;
+  private EmailOutboxService emailOutbox;
+
+  @Autowired
+  private EmailTemplateRenderer templates;
 
   @Autowired
   private MikvahConfiguration config;
@@ -63,96 +79,76 @@ public class EmailService {
   @Autowired
   private MikvahUserRepository userRepository;
 
-  private final MustacheFactory mf = new DefaultMustacheFactory();
-  private final NumberFormat currencyFormatter = NumberFormat.getCurrencyInstance();
+  private ZoneId timeZone;
+
+  @PostConstruct
+  public void init() {
 
-  private final LoadingCache<String, Mustache> mustacheTemplateCache =
-      Caffeine.newBuilder().maximumSize(100)
-          .build(templateFileName -> mf.compile(templateFileName));
+    timeZone = ZoneId.of(config.getTimeZone());
+
+  }
 
-  @Async
   public void sendAppointmentConfirmationEmail(final MikvahUser user,
       final AppointmentSlot appointment) {
 
     try {
 
-      final Mustache htmlMustache =
-          mustacheTemplateCache.get("emails/appointment-confirmation.html.mustache");
-
-      final Mustache txtMustache =
-          mustacheTemplateCache.get("emails/appointment-confirmation.txt.mustache");
-
-      final Map<String, Object> context = new HashMap<>();
-      context.put("appointmentSlotId", appointment.getId());
-      context.put("fullName", user.getFullName());
-      context.put("isoStartTime", appointment.getStart().atZone(ZoneId.of(config.getTimeZone()))
-          .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
-      context.put("isoModifiedTime", LocalDateTime.now().atZone(ZoneId.of(config.getTimeZone()))
-          .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
-      context.put("startDateTime",
-          appointment.getStart().atZone(ZoneId.of(config.getTimeZone())).format(FRIENDLY_FORMAT));
-      context.put("ccCharged", !StringUtils.isEmpty(appointment.getStripeChargeId()));
+      final ZonedDateTime start = appointment.getStart().atZone(timeZone);
+      final AppointmentConfirmation.AppointmentConfirmationBuilder context =
+          AppointmentConfirmation.builder()
+              .appointmentSlotId(appointment.getId())
+              .fullName(user.getFullName())
+              .isoStartTime(start.format(DateTimeFormatter.ISO_OFFSET_DATE_TIME))
+              .isoModifiedTime(now().format(DateTimeFormatter.ISO_OFFSET_DATE_TIME))
+              .startDateTime(start.format(FRIENDLY_FORMAT))
+              .ccCharged(!StringUtils.isEmpty(appointment.getStripeChargeId()))
+              .confirmationCode(appointment.getStripeChargeId())
+              .amount(formatCents(config.getAppointmentCost()));
       final Optional<CreditCard> creditCardOptional = creditCardService.getCreditCard(user);
       if (creditCardOptional.isPresent()) {
         final CreditCard creditCard = creditCardOptional.get();
-        context.put("cardType", creditCard.getBrand());
-        context.put(LAST4, creditCard.getLast4());
+        context.cardType(creditCard.getBrand()).last4(creditCard.getLast4());
       }
-      context.put("confirmationCode", appointment.getStripeChargeId());
-      context.put(AMOUNT, currencyFormatter.format(config.getAppointmentCost() / CENTS_PER_DOLLAR));
 
-      sendEmail(user, htmlMustache, txtMustache, context, "Your Appointment Is Confirmed!");
+      sendEmail(user, "appointment-confirmation", context.build(),
+          "Your Appointment Is Confirmed!");
 
     } catch (final Exception e) {
       log.error("There was a problem sending the appointment confirmation email.", e);
     }
   }
 
-  @Async
   public void sendAppointmentCancellationEmail(final MikvahUser user,
       final AppointmentSlot appointment,
       final Optional<String> refundId) {
 
     try {
 
-      final Mustache htmlMustache =
-          mustacheTemplateCache.get("emails/appointment-cancellation.html.mustache");
-
-      final Mustache txtMustache =
-          mustacheTemplateCache.get("emails/appointment-cancellation.txt.mustache");
-
-      final Map<String, Object> context = new HashMap<>();
-      context.put("appointmentSlotId", appointment.getId());
-      context.put("fullName", user.getFullName());
-      context.put("isoStartTime", appointment.getStart().atZone(ZoneId.of(config.getTimeZone()))
-          .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
-      context.put("isoModifiedTime", LocalDateTime.now().atZone(ZoneId.of(config.getTimeZone()))
-          .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
-      context.put("startDateTime",
-          appointment.getStart().atZone(ZoneId.of(config.getTimeZone())).format(FRIENDLY_FORMAT));
-      context.put("ccRefunded", refundId.isPresent());
-      context.put("confirmationCode", refundId.orElse(null));
-      context.put(AMOUNT, currencyFormatter.format(config.getAppointmentCost() / CENTS_PER_DOLLAR));
-
-      sendEmail(user, htmlMustache, txtMustache, context, "You're Appointment Has Been Cancelled");
+      final ZonedDateTime start = appointment.getStart().atZone(timeZone);
+      final AppointmentCancellation context = AppointmentCancellation.builder()
+          .appointmentSlotId(appointment.getId())
+          .fullName(user.getFullName())
+          .isoStartTime(start.format(DateTimeFormatter.ISO_OFFSET_DATE_TIME))
+          .isoModifiedTime(now().format(DateTimeFormatter.ISO_OFFSET_DATE_TIME))
+          .startDateTime(start.format(FRIENDLY_FORMAT))
+          .ccRefunded(refundId.isPresent())
+          .confirmationCode(refundId.orElse(null))
+          .amount(formatCents(config.getAppointmentCost()))
+          .build();
+
+      sendEmail(user, "appointment-cancellation", context,
+          "You're Appointment Has Been Cancelled");
 
     } catch (final Exception e) {
       log.error("There was a problem sending the appointment cancellation email.", e);
     }
   }
 
-  @Async
   public void sendWelcomeEmail(final MikvahUser user) {
 
     try {
 
-      final Mustache htmlMustache = mustacheTemplateCache.get("emails/welcome.html.mustache");
-
-      final Mustache txtMustache = mustacheTemplateCache.get("emails/welcome.txt.mustache");
-
-      final Map<String, Object> context = new HashMap<>();
-
-      sendEmail(user, htmlMustache, txtMustache, context,
+      sendEmail(user, "welcome", EmailContexts.EMPTY,
           "Welcome to the Los Angeles Mikvah Society - Mikvat Esteher Website");
 
     } catch (final Exception e) {
@@ -160,28 +156,11 @@ public class EmailService {
     }
   }
 
-  @Async
   public void sendNewMemberEmail(final MikvahUser user, final Membership membership) {
     try {
 
-      final Mustache htmlMustache =
-          mustacheTemplateCache.get("emails/new-membership.html.mustache");
-
-      final Mustache txtMustache = mustacheTemplateCache.get("emails/new-membership.txt.mustache");
-
-      final Map<String, Object> context = new HashMap<>();
-      context.put("level", membership.getPlan().name());
-      context.put(EXPIRATION_DATE, membership.getExpiration().format(FRIENDLY_FORMAT));
-      final Optional<CreditCard> creditCard = creditCardService.getCreditCard(user);
-      if (creditCard.isPresent()) {
-        context.put(LAST4, creditCard.get().getLast4());
-      } else {
-        context.put(LAST4, "XXXX");
-      }
-      context.put("autoRenewEnabled", membership.isAutoRenewEnabled());
-      context.put("date", FRIENDLY_FORMAT.format(LocalDateTime.now()));
-      context.put(AMOUNT, membership.getPlan().getFormattedPrice());
-      sendEmail(user, htmlMustache, txtMustache, context, "Mikvah Membership");
+      sendEmail(user, "new-membership", createMembershipPaymentContext(user, membership),
+          "Mikvah Membership");
 
     } catch (final Exception e) {
 
@@ -194,30 +173,11 @@ public class EmailService {
 
   }
 
-  @Async
   public void sendMembershipRenewalEmail(final MikvahUser user, final Membership membership) {
     try {
 
-      final Mustache htmlMustache =
-          mustacheTemplateCache.get("emails/membership-renewal.html.mustache");
-
-      final Mustache txtMustache =
-          mustacheTemplateCache.get("emails/membership-renewal.txt.mustache");
-
-      final Map<String, Object> context = new HashMap<>();
-      context.put("level", membership.getPlan().name());
-      context.put(EXPIRATION_DATE, membership.getExpiration().format(FRIENDLY_FORMAT));
-      final Optional<CreditCard> creditCard = creditCardService.getCreditCard(user);
-      if (creditCard.isPresent()) {
-        context.put(LAST4, creditCard.get().getLast4());
-      } else {
-        context.put(LAST4, "XXXX");
-      }
-      context.put("autoRenewEnabled", membership.isAutoRenewEnabled());
-      context.put("date", FRIENDLY_FORMAT.format(LocalDateTime.now()));
-      context.put(AMOUNT, membership.getPlan().getFormattedPrice());
-
-      sendEmail(user, htmlMustache, txtMustache, context, "Mikvah Membership Renewal");
+      sendEmail(user, "membership-renewal", createMembershipPaymentContext(user, membership),
+          "Mikvah Membership Renewal");
 
     } catch (final Exception e) {
 
@@ -230,23 +190,14 @@ public class EmailService {
 
   }
 
-  @Async
   public void sendCreditCardUpdateEmail(final MikvahUser user,
       final Optional<Membership> membership) {
     try {
 
-      final Mustache htmlMustache =
-          mustacheTemplateCache.get("emails/credit-card-update.html.mustache");
-
-      final Mustache txtMustache =
-          mustacheTemplateCache.get("emails/credit-card-update.txt.mustache");
-
-      final Map<String, Object> context = new HashMap<>();
-
-      context.put("isAutoRenewingMember",
-          membership.isPresent() && membership.get().isAutoRenewEnabled());
+      final CreditCardUpdate context =
+          new CreditCardUpdate(membership.isPresent() && membership.get().isAutoRenewEnabled());
 
-      sendEmail(user, htmlMustache, txtMustache, context, "Credit Card Update");
+      sendEmail(user, "credit-card-update", context, "Credit Card Update");
 
     } catch (final Exception e) {
 
@@ -257,20 +208,12 @@ public class EmailService {
     }
   }
 
-  @Async
   public void sendAutoRenewDisabledEmail(final MikvahUser user, final Membership membership) {
     try {
 
-      final Mustache htmlMustache =
-          mustacheTemplateCache.get("emails/auto-renew-disabled.html.mustache");
-
-      final Mustache txtMustache =
-          mustacheTemplateCache.get("emails/auto-renew-disabled.txt.mustache");
-
-      final Map<String, Object> context = new HashMap<>();
-      context.put(EXPIRATION_DATE, FRIENDLY_FORMAT.format(membership.getExpiration()));
-
-      sendEmail(user, htmlMustache, txtMustache, context, "Membership Automatic Renewal Disabled");
+      sendEmail(user, "auto-renew-disabled",
+          new AutoRenewChange(formatUtc(membership.getExpiration())),
+          "Membership Automatic Renewal Disabled");
 
     } catch (final Exception e) {
 
@@ -279,20 +222,12 @@ public class EmailService {
     }
   }
 
-  @Async
   public void sendAutoRenewEnabledEmail(final MikvahUser user, final Membership membership) {
     try {
 
-      final Mustache htmlMustache =
-          mustacheTemplateCache.get("emails/auto-renew-enabled.html.mustache");
-
-      final Mustache txtMustache =
-          mustacheTemplateCache.get("emails/auto-renew-enabled.txt.mustache");
-
-      final Map<String, Object> context = new HashMap<>();
-      context.put(EXPIRATION_DATE, FRIENDLY_FORMAT.format(membership.getExpiration()));
-
-      sendEmail(user, htmlMustache, txtMustache, context, "Membership Automatic Renewal Enabled");
+      sendEmail(user, "auto-renew-enabled",
+          new AutoRenewChange(formatUtc(membership.getExpiration())),
+          "Membership Automatic Renewal Enabled");
 
     } catch (final Exception e) {
 
@@ -302,7 +237,6 @@ public class EmailService {
 
   }
 
-  @Async
   public void sendUpcomingRenewalEmail(final Invoice upcomingInvoice) {
     try {
 
@@ -314,23 +248,12 @@ public class EmailService {
       }
       final MikvahUser user = userOptional.get();
 
-      final Mustache htmlMustache =
-          mustacheTemplateCache.get("emails/upcoming-renewal.html.mustache");
-
-      final Mustache txtMustache =
-          mustacheTemplateCache.get("emails/upcoming-renewal.txt.mustache");
-
-      final Map<String, Object> context = new HashMap<>();
-
-      final Instant i = Instant.ofEpochSecond(upcomingInvoice.getNextPaymentAttempt());
-      final ZonedDateTime renewalDate = ZonedDateTime.ofInstant(i, ZoneId.of(config.getTimeZone()));
-      final String formattedRenewalDate = FRIENDLY_FORMAT.format(renewalDate);
-
-      context.put("renewalDate", formattedRenewalDate);
-      context.put(AMOUNT,
-          currencyFormatter.format(upcomingInvoice.getAmountDue() / CENTS_PER_DOLLAR));
+      final Instant renewalDate = Instant.ofEpochSecond(upcomingInvoice.getNextPaymentAttempt());
+      final UpcomingRenewal context = new UpcomingRenewal(
+          FRIENDLY_FORMAT.format(renewalDate.atZone(timeZone)),
+          formatCents(upcomingInvoice.getAmountDue()));
 
-      sendEmail(user, htmlMustache, txtMustache, context, "Upcoming Mikvah Membership Renewal");
+      sendEmail(user, "upcoming-renewal", context, "Upcoming Mikvah Membership Renewal");
 
     } catch (final Exception e) {
 
@@ -341,19 +264,11 @@ public class EmailService {
     }
   }
 
-  @Async
   public void sendMembershipEndedEmail(final MikvahUser user) {
 
     try {
-      final Mustache htmlMustache =
-          mustacheTemplateCache.get("emails/membership-ended.html.mustache");
 
-      final Mustache txtMustache =
-          mustacheTemplateCache.get("emails/membership-ended.txt.mustache");
-
-      final Map<String, Object> context = new HashMap<>();
-
-      sendEmail(user, htmlMustache, txtMustache, context, "Membership Ended");
+      sendEmail(user, "membership-ended", EmailContexts.EMPTY, "Membership Ended");
 
     } catch (final Exception e) {
       log.error("There was a problem sending the membership ended email.", e);
@@ -361,24 +276,19 @@ public class EmailService {
 
   }
 
-  @Async
   public void sendDonationEmail(final String name, final String email, final double amount) {
 
-    final String formattedAmount = NumberFormat.getCurrencyInstance().format(amount);
+    final Donation context = Donation.builder()
+        .name(name)
+        .donorEmail(email)
+        .amount(CURRENCY_FORMAT.get().format(amount))
+        .date(FRIENDLY_FORMAT.format(now()))
+        .build();
+
     // Receipt to donor
     try {
-      final Mustache htmlMustache =
-          mustacheTemplateCache.get("emails/donation-receipt.html.mustache");
-
-      final Mustache txtMustache =
-          mustacheTemplateCache.get("emails/donation-receipt.txt.mustache");
 
-      final Map<String, Object> context = new HashMap<>();
-      context.put("name", name);
-      context.put(AMOUNT, formattedAmount);
-      context.put("date", FRIENDLY_FORMAT.format(LocalDateTime.now()));
-
-      sendEmail(name, email, htmlMustache, txtMustache, context, "Donation Receipt");
+      sendEmail(name, email, "donation-receipt", context, "Donation Receipt");
 
     } catch (final Exception e) {
       log.error("There was a problem sending the donation receipt email.", e);
@@ -386,20 +296,9 @@ public class EmailService {
 
     // Notification to mikvah staff
     try {
-      final Mustache htmlMustache =
-          mustacheTemplateCache.get("emails/donation-notification.html.mustache");
-
-      final Mustache txtMustache =
-          mustacheTemplateCache.get("emails/donation-notification.txt.mustache");
 
-      final Map<String, Object> context = new HashMap<>();
-      context.put("name", name);
-      context.put("donorEmail", email);
-      context.put(AMOUNT, formattedAmount);
-      context.put("date", FRIENDLY_FORMAT.format(LocalDateTime.now()));
-      sendEmail("Mikvah Treasurer", config.getMikvahTreasurerEmail(), htmlMustache, txtMustache,
-          context,
-          "Donation Notification");
+      sendEmail("Mikvah Treasurer", config.getMikvahTreasurerEmail(), "donation-notification",
+          context, "Donation Notification");
 
     } catch (final Exception e) {
 
@@ -413,23 +312,15 @@ public class EmailService {
       final String formattedAmount) {
     // Notification to mikvah staff
     try {
-      final Mustache htmlMustache =
-          mustacheTemplateCache.get("emails/membership-notification.html.mustache");
-
-      final Mustache txtMustache =
-          mustacheTemplateCache.get("emails/membership-notification.txt.mustache");
 
-      final Map<String, Object> context = new HashMap<>();
-      context.put("name", name);
-      context.put(AMOUNT, formattedAmount);
-      context.put("date", FRIENDLY_FORMAT.format(LocalDateTime.now()));
+      final MembershipNotification context =
+          new MembershipNotification(name, formattedAmount, FRIENDLY_FORMAT.format(now()));
       final Recipient treasurer = new Recipient("Mikvah Treasurer",
           config.getMikvahTreasurerEmail(), javax.mail.Message.RecipientType.TO);
       final Recipient membershipManager = new Recipient("Membership Manager",
           config.getMembershipManagerEmail(), javax.mail.Message.RecipientType.TO);
       final Collection<Recipient> recipients = Arrays.asList(treasurer, membershipManager);
-      sendEmail(recipients, htmlMustache, txtMustache, context,
-          "Donation Notification");
+      sendEmail(recipients, "membership-notification", context, "Donation Notification");
 
     } catch (final Exception e) {
 
@@ -438,52 +329,74 @@ public class EmailService {
     }
   }
 
-  private void sendEmail(final MikvahUser user, final Mustache htmlMustache,
-      final Mustache txtMustache, final Map<String, Object> context,
-      final String subject) {
+  private MembershipPayment createMembershipPaymentContext(final MikvahUser user,
+      final Membership membership) {
 
-    sendEmail(user.getFullName(), user.getEmail(), htmlMustache, txtMustache, context, subject);
+    final Optional<CreditCard> creditCard = creditCardService.getCreditCard(user);
+    return MembershipPayment.builder()
+        .level(membership.getPlan().name())
+        .expirationDate(formatUtc(membership.getExpiration()))
+        .last4(creditCard.map(CreditCard::getLast4).orElse("XXXX"))
+        .autoRenewEnabled(membership.isAutoRenewEnabled())
+        .date(FRIENDLY_FORMAT.format(now()))
+        .amount(membership.getPlan().getFormattedPrice())
+        .build();
 
   }
 
-  private void sendEmail(final String name, final String emailAddress, final Mustache htmlMustache,
-      final Mustache txtMustache,
-      final Map<String, Object> context, final String subject) {
+  private ZonedDateTime now() {
 
-    final StringWriter htmlWriter = new StringWriter();
-    final StringWriter txtWriter = new StringWriter();
+    return ZonedDateTime.now(Clock.system(timeZone));
 
-    htmlMustache.execute(htmlWriter, context);
-    txtMustache.execute(txtWriter, context);
+  }
+
+  /**
+   * Membership times are stored in UTC, show them in the mikvah's time zone.
+   */
+  private String formatUtc(final LocalDateTime utc) {
 
-    final Email email = EmailBuilder.startingBlank()
-        .from("Los Angeles Mikvah Society", config.getFromEmailAddress())
-        .to(name, emailAddress)
-        .withSubject(subject)
-        .withPlainText(txtWriter.toString())
-        .withHTMLText(htmlWriter.toString()).buildEmail();
+    return FRIENDLY_FORMAT.format(utc.atOffset(ZoneOffset.UTC).atZoneSameInstant(timeZone));
 
-    mailer.sendMail(email, true);
   }
 
-  private void sendEmail(final Collection<Recipient> recipients, final Mustache htmlMustache,
-      final Mustache txtMustache,
-      final Map<String, Object> context, final String subject) {
+  private static String formatCents(final long cents) {
 
-    final StringWriter htmlWriter = new StringWriter();
-    final StringWriter txtWriter = new StringWriter();
+    return CURRENCY_FORMAT.get().format(BigDecimal.valueOf(cents, CENTS_DECIMAL_PLACES));
+
+  }
 
-    htmlMustache.execute(htmlWriter, context);
-    txtMustache.execute(txtWriter, context);
+  private void sendEmail(final MikvahUser user, final String template, final Object context,
+      final String subject) throws UnsupportedEncodingException {
+
+    sendEmail(user.getFullName(), user.getEmail(), template, context, subject);
+
+  }
 
-    final Email email = EmailBuilder.startingBlank()
-        .from("Los Angeles Mikvah Society", config.getFromEmailAddress())
-        .to(recipients)
-        .withSubject(subject)
-        .withPlainText(txtWriter.toString())
-        .withHTMLText(htmlWriter.toString()).buildEmail();
+  private void sendEmail(final String name, final String emailAddress, final String template,
+      final Object context, final String subject) throws UnsupportedEncodingException {
+
+    final Recipient recipient = new Recipient(name, emailAddress,
+        javax.mail.Message.RecipientType.TO);
+    sendEmail(Collections.singletonList(recipient), template, context, subject);
+  }
+
+  private void sendEmail(final Collection<Recipient> recipients, final String template,
+      final Object context, final String subject) throws UnsupportedEncodingException {
+
+    final RenderedEmail rendered = templates.render(template, context);
+
+    final List<String> addresses = new ArrayList<>(recipients.size());
+    for (final Recipient recipient : recipients) {
+      addresses.add(new InternetAddress(recipient.getAddress(), recipient.getName(),
+          StandardCharsets.UTF_8.name()).toString());
+    }
 
-    mailer.sendMail(email, true);
+    emailOutbox.enqueue(OutboxEmail.builder()
+        .recipients(String.join(", ", addresses))
+        .subject(subject)
+        .textBody(rendered.getText())
+        .htmlBody(rendered.getHtml())
+        .build());
   }
 
 }
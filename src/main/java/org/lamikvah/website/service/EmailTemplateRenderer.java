@@ -0,0 +1,111 @@
+package org.lamikvah.website.service;
+
+import com.github.mustachejava.DefaultMustacheFactory;
+import com.github.mustachejava.Mustache;
+import com.github.mustachejava.MustacheFactory;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+/**
+ * Compiles every template under {@code emails/} once at startup and renders them with the typed
+ * contexts in {@link EmailContexts}. A template that fails to compile fails startup instead of the
+ * first email that uses it.
+ */
+@Component
+@Slf4j
+public class EmailTemplateRenderer {
+
+  private static final String TEMPLATE_PATTERN = "classpath*:emails/*.mustache";
+
+  private static final String HTML_SUFFIX = ".html.mustache";
+
+  private static final String TEXT_SUFFIX = ".txt.mustache";
+
+  private static final int INITIAL_BUFFER_SIZE = 8192;
+
+  /**
+   * Don't hold on to the buffer after rendering something unusually large
+   */
+  private static final int MAX_RETAINED_BUFFER_SIZE = 65536;
+
+  private final Map<String, Mustache> templates;
+
+  private final ThreadLocal<StringWriter> buffers =
+      ThreadLocal.withInitial(() -> new StringWriter(INITIAL_BUFFER_SIZE));
+
+  public EmailTemplateRenderer() throws IOException {
+
+    final MustacheFactory mustacheFactory = new DefaultMustacheFactory();
+    final Map<String, Mustache> compiled = new HashMap<>();
+    for (final Resource resource : new PathMatchingResourcePatternResolver()
+        .getResources(TEMPLATE_PATTERN)) {
+      final String name = resource.getFilename();
+      try (Reader reader =
+          new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8)) {
+        compiled.put(name, mustacheFactory.compile(reader, name));
+      }
+    }
+    templates = Map.copyOf(compiled);
+    log.info("Compiled {} email templates.", templates.size());
+
+  }
+
+  /**
+   * Renders the HTML and text versions of the email with the given name, e.g.
+   * {@code appointment-confirmation}.
+   */
+  public RenderedEmail render(final String name, final Object context) {
+
+    return new RenderedEmail(
+        render(getTemplate(name + HTML_SUFFIX), context),
+        render(getTemplate(name + TEXT_SUFFIX), context));
+
+  }
+
+  private Mustache getTemplate(final String fileName) {
+
+    final Mustache template = templates.get(fileName);
+    if (template == null) {
+      throw new IllegalArgumentException("There is no email template named " + fileName);
+    }
+    return template;
+
+  }
+
+  private String render(final Mustache template, final Object context) {
+
+    final StringWriter buffer = buffers.get();
+    buffer.getBuffer().setLength(0);
+    try {
+      template.execute(buffer, context).flush();
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    final String rendered = buffer.toString();
+    if (buffer.getBuffer().capacity() > MAX_RETAINED_BUFFER_SIZE) {
+      buffers.remove();
+    }
+    return rendered;
+
+  }
+
+  @Value
+  public static class RenderedEmail {
+
+    String html;
+
+    String text;
+  }
+
+}
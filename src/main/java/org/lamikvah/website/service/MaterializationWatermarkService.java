@@ -0,0 +1,62 @@
+package org.lamikvah.website.service;
+
+import java.time.LocalDate;
+import java.util.Optional;
+import lombok.extern.slf4j.Slf4j;
+import org.lamikvah.website.dao.MaterializationWatermarkRepository;
+import org.lamikvah.website.data.MaterializationWatermark;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Tracks how far ahead the hours job has generated rows, so each run only has to look at days that
+ * are new or have been invalidated.
+ */
+@Component
+@Slf4j
+public class MaterializationWatermarkService {
+
+  public static final String DAILY_HOURS = "daily_hours";
+
+  @Autowired
+  private MaterializationWatermarkRepository repo;
+
+  /**
+   * @return the last day generated with the given rules, or empty if nothing was generated yet or
+   *         the rules have changed since
+   */
+  public Optional<LocalDate> getMaterializedThrough(final String name, final String fingerprint) {
+
+    return repo.findById(name)
+        .filter(watermark -> watermark.getFingerprint().equals(fingerprint))
+        .map(MaterializationWatermark::getMaterializedThrough);
+
+  }
+
+  @Transactional
+  public void advance(final String name, final LocalDate materializedThrough,
+      final String fingerprint) {
+
+    repo.save(new MaterializationWatermark(name, materializedThrough, fingerprint));
+    log.debug("Materialized {} through {}", name, materializedThrough);
+
+  }
+
+  /**
+   * Makes the next run of the job generate rows again starting from the given day.
+   */
+  @Transactional
+  public void invalidateFrom(final String name, final LocalDate day) {
+
+    final Optional<MaterializationWatermark> existing = repo.findById(name);
+    if (existing.isPresent() && !existing.get().getMaterializedThrough().isBefore(day)) {
+      final MaterializationWatermark watermark = existing.get();
+      watermark.setMaterializedThrough(day.minusDays(1));
+      repo.save(watermark);
+      log.info("Invalidated {} starting from {}", name, day);
+    }
+
+  }
+
+}
@@ -3,9 +3,10 @@ package org.lamikvah.website.service;
 import java.time.Clock;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import org.lamikvah.website.dao.MembershipRepository;
 import org.lamikvah.website.dao.MikvahUserRepository;
@@ -16,8 +17,11 @@ import org.lamikvah.website.exception.AlreadyMemberException;
 import org.lamikvah.website.exception.ServerErrorException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.stripe.exception.ApiConnectionException;
 import com.stripe.exception.ApiException;
@@ -44,12 +48,23 @@ public class MembershipService {
 
     private static final int MEMBERSHIP_LENGTH = 1;
 
+    private static final int OFFLINE_GRACE_DAYS = 7;
+
+    private static final int OFFLINE_EXPIRY_BATCH_SIZE = 500;
+
     @Autowired
     private MembershipRepository membershipRepository;
 
     @Autowired
     private MikvahUserRepository userRepository;
 
+    @Autowired
+    @Lazy
+    private MikvahUserService mikvahUserService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
     @Autowired
     @Lazy
     private Optional<EmailService> emailService;
@@ -118,6 +133,7 @@ public class MembershipService {
 
     }
 
+    @Transactional
     public void updateMembersip(final Invoice invoice) {
 
         if (invoice.getPaid()) {
@@ -169,7 +185,7 @@ public class MembershipService {
 
                     final MikvahUser user = membership.getMikvahUser();
                     user.setMember(true);
-                    userRepository.save(user);
+                    mikvahUserService.saveUser(user);
 
                     if (isNewMembership) {
                         emailService.get().sendNewMemberEmail(user, membership);
@@ -188,6 +204,7 @@ public class MembershipService {
 
     }
 
+    @Transactional
     public void cancelMembership(final Subscription subscription) {
 
         final Optional<Membership> membership = membershipRepository.findByStripeSubscriptionId(subscription.getId());
@@ -204,7 +221,7 @@ public class MembershipService {
         }
         final MikvahUser user = userOptional.get();
         user.setMember(false);
-        userRepository.save(user);
+        mikvahUserService.saveUser(user);
 
         emailService.get().sendMembershipEndedEmail(user);
 
@@ -212,30 +229,62 @@ public class MembershipService {
 
     }
 
+    /**
+     * Ends offline memberships that lapsed more than a week ago. They're handled a batch at a time,
+     * each in its own transaction, so memory use doesn't grow with the number of members.
+     */
     @Scheduled(initialDelay = NONE, fixedRate = TWENTY_FOUR_HOURS)
     public void cancelOfflineSubscriptions() {
 
         log.info("Checking for non-Stripe managed memberships...");
 
-        final LocalDateTime sevenDaysAgo = LocalDateTime.now().minusDays(7);
-        final List<Membership> membershipsToCancel = new ArrayList<>();
-
-        for (final Membership membership : membershipRepository.findAll()) {
-            if (!membership.isAutoRenewEnabled()
-                    && membership.getExpiration().isBefore(sevenDaysAgo)) {
-                log.info("Canceling membership {}", membership);
-                membershipsToCancel.add(membership);
-                final MikvahUser user = membership.getMikvahUser();
-                if (user != null) {
-                    emailService.get().sendMembershipEndedEmail(membership.getMikvahUser());
-                    membershipsToCancel.add(membership);
-                    user.setMember(false);
-                    userRepository.save(user);
-                }
-            }
+        final LocalDateTime cutoff = LocalDateTime.now(Clock.systemUTC()).minusDays(OFFLINE_GRACE_DAYS);
+        int cancelled = 0;
+        Membership last = null;
+        List<Membership> batch;
+        do {
+            final Membership after = last;
+            batch = transactionTemplate.execute(status -> cancelExpiredOfflineMemberships(cutoff, after));
+            mikvahUserService.evictUsers(batch.stream()
+                    .map(Membership::getMikvahUser)
+                    .filter(user -> user != null && user.getAuth0UserId() != null)
+                    .map(MikvahUser::getAuth0UserId)
+                    .collect(Collectors.toList()));
+            cancelled += batch.size();
+            last = batch.isEmpty() ? null : batch.get(batch.size() - 1);
+        } while (batch.size() == OFFLINE_EXPIRY_BATCH_SIZE);
+
+        log.info("Cancelled {} expired non-Stripe managed memberships.", cancelled);
+
+    }
+
+    private List<Membership> cancelExpiredOfflineMemberships(final LocalDateTime cutoff, final Membership after) {
+
+        final PageRequest page = PageRequest.of(0, OFFLINE_EXPIRY_BATCH_SIZE);
+        final List<Membership> memberships = after == null
+                ? membershipRepository.findExpiredOffline(cutoff, page)
+                : membershipRepository.findExpiredOfflineAfter(cutoff, after.getExpiration(), after.getId(), page);
+        if (memberships.isEmpty()) {
+            return memberships;
         }
 
-        membershipRepository.deleteAll(membershipsToCancel);
+        final List<MikvahUser> users = memberships.stream()
+                .map(Membership::getMikvahUser)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        if (!users.isEmpty()) {
+            userRepository.endMemberships(users.stream().map(MikvahUser::getId).collect(Collectors.toList()));
+        }
+        membershipRepository.deleteAllByIdIn(memberships.stream().map(Membership::getId).collect(Collectors.toList()));
+
+        for (final Membership membership : memberships) {
+            log.info("Canceling membership {}", membership);
+        }
+        // These only go into the outbox, and are sent once the batch commits
+        for (final MikvahUser user : users) {
+            emailService.get().sendMembershipEndedEmail(user);
+        }
+        return memberships;
 
     }
 
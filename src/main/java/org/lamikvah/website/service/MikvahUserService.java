@@ -4,17 +4,38 @@ import com.auth0.client.mgmt.ManagementAPI;
 import com.auth0.client.mgmt.filter.UserFilter;
 import com.auth0.exception.Auth0Exception;
 import com.auth0.json.mgmt.users.User;
+import com.auth0.jwt.interfaces.Claim;
+import com.auth0.jwt.interfaces.DecodedJWT;
 import com.auth0.net.Request;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.security.Principal;
 import java.time.Clock;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import javax.annotation.PreDestroy;
 import javax.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
 import org.lamikvah.website.MikvahConfiguration;
 import org.lamikvah.website.dao.AppointmentSlotRepository;
 import org.lamikvah.website.dao.MembershipRepository;
@@ -32,10 +53,13 @@ import org.lamikvah.website.data.UserRequestDto;
 import org.lamikvah.website.exception.ServerErrorException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
 @Component
+@Slf4j
 public class MikvahUserService {
 
   private final MikvahConfiguration config;
@@ -54,8 +78,50 @@ public class MikvahUserService {
 
   private final ManagementAPI auth0ManagementApi;
 
+  private final Counter emailsFromToken;
+
+  private final Counter emailsFromManagementApi;
+
   private static final UserFilter NO_OP_USER_FILTER = new UserFilter();
 
+  private static final int MAXIMUM_CACHED_USERS = 10000;
+
+  private static final Duration STRIPE_DEADLINE = Duration.ofSeconds(3);
+
+  private static final Duration DATABASE_DEADLINE = Duration.ofSeconds(2);
+
+  private static final int USER_DETAILS_THREADS = 16;
+
+  /**
+   * Bounded so a slow Stripe can't make requests for users pile up threads without limit. Once
+   * the queue is full, users are returned without the details rather than waiting for them.
+   */
+  private final ExecutorService userDetailsExecutor = new ThreadPoolExecutor(
+      USER_DETAILS_THREADS, USER_DETAILS_THREADS, 1, TimeUnit.MINUTES,
+      new ArrayBlockingQueue<>(100),
+      new ThreadFactoryBuilder().setNameFormat("user-details-%d").setDaemon(true).build(),
+      new ThreadPoolExecutor.AbortPolicy());
+
+  // Short enough that changes made directly in the database are picked up quickly
+  private static final Duration USER_CACHE_EXPIRATION = Duration.ofMinutes(5);
+
+  // Emails can only be changed in Auth0, which is rare
+  private static final Duration EMAIL_CACHE_EXPIRATION = Duration.ofHours(1);
+
+  /**
+   * Concurrent lookups of the same user share a single load, so a burst of requests from a new
+   * user only calls Auth0 once. Callers always get a copy, since they modify the users they get.
+   */
+  private final LoadingCache<String, MikvahUser> usersByAuth0UserId = Caffeine.newBuilder()
+      .maximumSize(MAXIMUM_CACHED_USERS)
+      .expireAfterWrite(USER_CACHE_EXPIRATION)
+      .build(this::loadUser);
+
+  private final LoadingCache<String, String> emailsByAuth0UserId = Caffeine.newBuilder()
+      .maximumSize(MAXIMUM_CACHED_USERS)
+      .expireAfterWrite(EMAIL_CACHE_EXPIRATION)
+      .build(this::fetchUserEmail);
+
   @Autowired
   public MikvahUserService(final MikvahConfiguration config,
       final MikvahUserRepository userRepository,
@@ -63,7 +129,8 @@ public class MikvahUserService {
       final MembershipRepository membershipRepository,
       @Lazy final CreditCardService creditCardService,
       @Lazy final EmailService emailService,
-      final DailyHoursService dailyHoursService) {
+      final DailyHoursService dailyHoursService,
+      final MeterRegistry meterRegistry) {
 
     auth0ManagementApi =
         new ManagementAPI(config.getAuth0().getIssuer(), config.getAuth0().getManagementToken());
@@ -74,10 +141,55 @@ public class MikvahUserService {
     this.creditCardService = creditCardService;
     this.emailService = emailService;
     this.dailyHoursService = dailyHoursService;
+    emailsFromToken = meterRegistry.counter("mikvah.user.email.lookups", "source", "token");
+    emailsFromManagementApi =
+        meterRegistry.counter("mikvah.user.email.lookups", "source", "management_api");
   }
 
   private String getUserEmail(final String principalName) throws Auth0Exception {
 
+    final Optional<String> tokenEmail = getVerifiedEmailFromToken(principalName);
+    if (tokenEmail.isPresent()) {
+      emailsFromToken.increment();
+      return tokenEmail.get();
+    }
+
+    try {
+      return emailsByAuth0UserId.get(principalName);
+    } catch (final CompletionException e) {
+      throw unwrapAuth0Exception(e);
+    }
+
+  }
+
+  /**
+   * Reads the email from the current request's token, which was already verified, as long as the
+   * token belongs to the given user and says the email was verified.
+   */
+  private Optional<String> getVerifiedEmailFromToken(final String principalName) {
+
+    if (!config.getAuth0().isEmailFromToken()) {
+      return Optional.empty();
+    }
+    final Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+    if (authentication == null || !principalName.equals(authentication.getName())
+        || !(authentication.getDetails() instanceof DecodedJWT)) {
+      return Optional.empty();
+    }
+
+    final DecodedJWT token = (DecodedJWT) authentication.getDetails();
+    final Claim email = token.getClaim("email");
+    final Claim emailVerified = token.getClaim("email_verified");
+    if (email.asString() == null || !Boolean.TRUE.equals(emailVerified.asBoolean())) {
+      return Optional.empty();
+    }
+    return Optional.of(email.asString());
+
+  }
+
+  private String fetchUserEmail(final String principalName) throws Auth0Exception {
+
+    emailsFromManagementApi.increment();
     final Request<User> apiRequest =
         auth0ManagementApi.users().get(principalName, NO_OP_USER_FILTER);
     final User user = apiRequest.execute();
@@ -107,7 +219,9 @@ public class MikvahUserService {
     user.setPhoneNumber(request.getPhoneNumber());
     user.setPostalCode(request.getPostalCode());
 
-    return userRepository.save(user);
+    final MikvahUser savedUser = userRepository.save(user);
+    usersByAuth0UserId.invalidate(auth0UserId);
+    return savedUser;
 
   }
 
@@ -133,6 +247,16 @@ public class MikvahUserService {
 
   public MikvahUser getUser(final String auth0UserId) throws Auth0Exception {
 
+    try {
+      return usersByAuth0UserId.get(auth0UserId).toBuilder().build();
+    } catch (final CompletionException e) {
+      throw unwrapAuth0Exception(e);
+    }
+
+  }
+
+  private MikvahUser loadUser(final String auth0UserId) throws Auth0Exception {
+
     Optional<MikvahUser> user = userRepository.getByAuth0UserId(auth0UserId);
     if (!user.isPresent()) {
       final String email = getUserEmail(auth0UserId);
@@ -157,44 +281,52 @@ public class MikvahUserService {
   public void saveUser(final MikvahUser user) {
 
     userRepository.save(user);
+    if (user.getAuth0UserId() != null) {
+      usersByAuth0UserId.invalidate(user.getAuth0UserId());
+    }
 
   }
 
-  private UserDto convertToUserDto(final MikvahUser user) {
+  /**
+   * For users changed with a bulk update rather than {@link #saveUser(MikvahUser)}.
+   */
+  public void evictUsers(final Collection<String> auth0UserIds) {
 
-    final Optional<CreditCard> card = creditCardService.getCreditCard(user);
-    final CreditCard defaultCard = card.orElse(null);
+    usersByAuth0UserId.invalidateAll(auth0UserIds);
 
-    AppointmentSlotDto currentAppointment = null;
-    final LocalDateTime now = LocalDateTime.now(Clock.system(ZoneId.of(config.getTimeZone())));
-    final LocalDateTime thirtyDaysFromNow = now.plusDays(30);
-    final List<AppointmentSlot> appointments = appointmentSlotRepository
-        .findByStartBetweenAndMikvahUserOrderByStartAsc(now, thirtyDaysFromNow, user);
-    if (!CollectionUtils.isEmpty(appointments)) {
-      final AppointmentSlot appointment = appointments.get(appointments.size() - 1);
-
-      final LocalDate appointmentDay = appointment.getStart().toLocalDate();
-      final Optional<DailyHours> hours = dailyHoursService.getHoursForDay(appointmentDay);
-      final LocalTime openingTime = hours.get().getOpeningLocalTime().get();
-      final ZonedDateTime lastCancellation = LocalDateTime.of(appointmentDay, openingTime)
-          .atZone(ZoneId.of(config.getTimeZone()));
-
-      currentAppointment = AppointmentSlotDto.builder()
-          .id(appointment.getId())
-          .start(appointment.getStart())
-          .roomType(appointment.getRoomType())
-          .build();
-      currentAppointment.setLastCancellation(lastCancellation);
+  }
+
+  private Auth0Exception unwrapAuth0Exception(final CompletionException e) {
+
+    if (e.getCause() instanceof Auth0Exception) {
+      return (Auth0Exception) e.getCause();
     }
+    throw e;
+
+  }
+
+  private UserDto convertToUserDto(final MikvahUser user) {
+
+    // Stripe dominates the latency, so each part is fetched at the same time and the DTO is
+    // returned without whatever part didn't make its deadline
+    final CompletableFuture<Optional<CreditCard>> card =
+        fetch(() -> creditCardService.getCreditCard(user), Optional.empty(), STRIPE_DEADLINE,
+            "credit card", user);
+    final CompletableFuture<Optional<AppointmentSlotDto>> currentAppointment =
+        fetch(() -> getCurrentAppointment(user), Optional.empty(), DATABASE_DEADLINE,
+            "current appointment", user);
+    final CompletableFuture<Optional<Membership>> membership =
+        fetch(() -> membershipRepository.findByMikvahUser(user), Optional.empty(),
+            DATABASE_DEADLINE, "membership", user);
 
     Plan plan = null;
     LocalDateTime expirationDate = null;
     boolean membershipAutoRenewalEnabled = true;
-    final Optional<Membership> membership = membershipRepository.findByMikvahUser(user);
-    if (membership.isPresent()) {
-      plan = membership.get().getPlan();
-      expirationDate = membership.get().getExpiration();
-      membershipAutoRenewalEnabled = membership.get().isAutoRenewEnabled();
+    final Optional<Membership> existingMembership = membership.join();
+    if (existingMembership.isPresent()) {
+      plan = existingMembership.get().getPlan();
+      expirationDate = existingMembership.get().getExpiration();
+      membershipAutoRenewalEnabled = existingMembership.get().isAutoRenewEnabled();
     }
 
     return UserDto.builder()
@@ -214,14 +346,83 @@ public class MikvahUserService {
         .admin(user.isAdmin())
         .stripeCustomerId(user.getStripeCustomerId())
         .title(user.getTitle())
-        .defaultCard(defaultCard)
-        .currentAppointment(currentAppointment)
+        .defaultCard(card.join().orElse(null))
+        .currentAppointment(currentAppointment.join().orElse(null))
         .membershipExpirationDate(expirationDate)
         .membershipPlan(plan)
         .membershipAutoRenewalEnabled(membershipAutoRenewalEnabled)
         .build();
   }
 
+  private Optional<AppointmentSlotDto> getCurrentAppointment(final MikvahUser user) {
+
+    final LocalDateTime now = LocalDateTime.now(Clock.system(ZoneId.of(config.getTimeZone())));
+    final LocalDateTime thirtyDaysFromNow = now.plusDays(30);
+    final List<AppointmentSlot> appointments = appointmentSlotRepository
+        .findByStartBetweenAndMikvahUserAndHoldExpirationIsNullOrderByStartAsc(now, thirtyDaysFromNow, user);
+    if (CollectionUtils.isEmpty(appointments)) {
+      return Optional.empty();
+    }
+    final AppointmentSlot appointment = appointments.get(appointments.size() - 1);
+
+    final LocalDate appointmentDay = appointment.getStart().toLocalDate();
+    final Optional<DailyHours> hours = dailyHoursService.getHoursForDay(appointmentDay);
+    final LocalTime openingTime = hours.get().getOpeningLocalTime().get();
+    final ZonedDateTime lastCancellation = LocalDateTime.of(appointmentDay, openingTime)
+        .atZone(ZoneId.of(config.getTimeZone()));
+
+    final AppointmentSlotDto currentAppointment = AppointmentSlotDto.builder()
+        .id(appointment.getId())
+        .start(appointment.getStart())
+        .roomType(appointment.getRoomType())
+        .build();
+    currentAppointment.setLastCancellation(lastCancellation);
+    return Optional.of(currentAppointment);
+
+  }
+
+  private <T> CompletableFuture<T> fetch(final Supplier<T> supplier, final T fallback,
+      final Duration deadline, final String description, final MikvahUser user) {
+
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    final Future<?> task;
+    try {
+      task = userDetailsExecutor.submit(() -> {
+        try {
+          result.complete(supplier.get());
+        } catch (final RuntimeException e) {
+          result.completeExceptionally(e);
+        }
+      });
+    } catch (final RejectedExecutionException e) {
+      log.warn("Too busy to get {} for user {}, returning the user without it", description,
+          user.getId());
+      return CompletableFuture.completedFuture(fallback);
+    }
+
+    return result.orTimeout(deadline.toMillis(), TimeUnit.MILLISECONDS)
+        .exceptionally(e -> {
+          if (e instanceof TimeoutException) {
+            // Interrupted so a fetch that missed its deadline doesn't keep holding a thread
+            task.cancel(true);
+            log.warn("Timed out getting {} for user {}, returning the user without it",
+                description, user.getId());
+          } else {
+            log.error("Failed to get {} for user {}, returning the user without it", description,
+                user.getId(), e);
+          }
+          return fallback;
+        });
+
+  }
+
+  @PreDestroy
+  public void shutdown() {
+
+    userDetailsExecutor.shutdown();
+
+  }
+
   public MikvahUser createUser(final UserCreationRequestDto request) {
 
     final String email = request.getEmail();
@@ -243,6 +444,9 @@ public class MikvahUserService {
     user.setPhoneNumber(request.getPhoneNumber());
     user.setPostalCode(request.getPostalCode());
 
-    return userRepository.save(user);
+    final MikvahUser savedUser = userRepository.save(user);
+    // Cached users are keyed by Auth0 id, so drop any that share this email
+    usersByAuth0UserId.asMap().values().removeIf(cached -> email.equals(cached.getEmail()));
+    return savedUser;
   }
 }
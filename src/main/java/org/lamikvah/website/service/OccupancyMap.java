@@ -0,0 +1,301 @@
+package org.lamikvah.website.service;
+
+import java.sql.Date;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+import lombok.extern.slf4j.Slf4j;
+import org.lamikvah.website.MikvahConfiguration;
+import org.lamikvah.website.dao.AppointmentSlotRepository;
+import org.lamikvah.website.dao.DailyHoursRepository;
+import org.lamikvah.website.data.AppointmentSlot;
+import org.lamikvah.website.data.AvailableDateTimeAndRoomType;
+import org.lamikvah.website.data.DailyHours;
+import org.lamikvah.website.data.RoomType;
+import org.lamikvah.website.service.SlotGrid.RoomSchedule;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Which rooms are occupied in each five minute tick of the bookable days, one bit set per room and
+ * day. It answers whether a time is open, finds the next open times and checks that a seat's room
+ * is free for the whole appointment, all without going to the database.
+ */
+@Component
+@Slf4j
+public class OccupancyMap {
+
+  private static final int MINUTES_PER_TICK = 5;
+
+  private static final long ONE_HOUR_IN_MILLSECONDS = 3600000;
+
+  @Autowired
+  private AppointmentSlotRepository appointmentSlotRepository;
+
+  @Autowired
+  private DailyHoursRepository dailyHoursRepository;
+
+  @Autowired
+  private SlotGrid slotGrid;
+
+  @Autowired
+  private MikvahConfiguration config;
+
+  private volatile Map<LocalDate, DayOccupancy> days = Map.of();
+
+  @EventListener(ApplicationReadyEvent.class)
+  @Scheduled(initialDelay = ONE_HOUR_IN_MILLSECONDS, fixedRate = ONE_HOUR_IN_MILLSECONDS)
+  public void rebuild() {
+
+    final LocalDate today = LocalDate.now(ZoneId.of(config.getTimeZone()));
+    final LocalDate lastDay = today.plusDays(config.getBookingHorizonDays());
+
+    final Map<LocalDate, DayOccupancy> rebuilt = new HashMap<>();
+    for (final DailyHours hours : dailyHoursRepository
+        .findByDayBetweenOrderByDayAsc(Date.valueOf(today), Date.valueOf(lastDay))) {
+      final LocalDate date = hours.getDay().toLocalDate();
+      rebuilt.put(date, new DayOccupancy(date, slotGrid.getRoomSchedules(hours)));
+    }
+    for (final AppointmentSlot slot : appointmentSlotRepository.findByStartBetweenOrderByStartAsc(
+        today.atStartOfDay(), lastDay.plusDays(1).atStartOfDay())) {
+      final DayOccupancy day = rebuilt.get(slot.getStart().toLocalDate());
+      if (day == null || slot.getRoom() == null
+          || !day.set(slot.getStart(), slot.getRoom().getId(), true)) {
+        log.warn("Appointment {} is not in any of the day's rooms.", slot.getId());
+      }
+    }
+
+    // Like the availability index, a booking that commits during the rebuild may be missed until
+    // the next one. Booking itself never trusts this.
+    days = Map.copyOf(rebuilt);
+    log.debug("Rebuilt occupancy for {} days.", rebuilt.size());
+
+  }
+
+  /**
+   * @return whether any room of the type starting at the given time is free. Days that haven't
+   *         been loaded yet count as open, leaving it to booking to decide.
+   */
+  public boolean isOpen(final LocalDateTime start, final RoomType roomType) {
+
+    final DayOccupancy day = days.get(start.toLocalDate());
+    return day == null || day.countOpenSeats(start, roomType) > 0;
+
+  }
+
+  /**
+   * @return whether the room is free for the whole of an appointment starting at the given time.
+   *         Rooms that aren't known count as free.
+   */
+  public boolean isRoomFree(final LocalDateTime start, final long roomId) {
+
+    final DayOccupancy day = days.get(start.toLocalDate());
+    return day == null || day.isRoomFree(start, roomId);
+
+  }
+
+  /**
+   * @return the earliest time after the given one that the room type is open, if there is one
+   *         within the booking horizon
+   */
+  public Optional<LocalDateTime> findNextOpenStart(final RoomType roomType,
+      final LocalDateTime after) {
+
+    return findOpenStarts(roomType, after, 1).stream()
+        .map(AvailableDateTimeAndRoomType::getDateTime)
+        .findFirst();
+
+  }
+
+  /**
+   * @return up to {@code limit} of the earliest times after the given one that the room type is
+   *         open within the booking horizon, with how many seats are open at each
+   */
+  public List<AvailableDateTimeAndRoomType> findOpenStarts(final RoomType roomType,
+      final LocalDateTime after, final int limit) {
+
+    final Map<LocalDate, DayOccupancy> current = days;
+    final LocalDate lastDay = LocalDate.now(ZoneId.of(config.getTimeZone()))
+        .plusDays(config.getBookingHorizonDays());
+    final List<AvailableDateTimeAndRoomType> openStarts = new ArrayList<>(limit);
+    for (LocalDate date = after.toLocalDate(); !date.isAfter(lastDay); date = date.plusDays(1)) {
+      final DayOccupancy day = current.get(date);
+      if (day == null) {
+        continue;
+      }
+      for (final LocalDateTime start : day.getStartsAfter(roomType, after)) {
+        final int openSeats = day.countOpenSeats(start, roomType);
+        if (openSeats > 0) {
+          openStarts.add(new AvailableDateTimeAndRoomType(start, roomType, openSeats));
+          if (openStarts.size() == limit) {
+            return openStarts;
+          }
+        }
+      }
+    }
+    return openStarts;
+
+  }
+
+  /**
+   * Marks the slot's room as occupied once the surrounding transaction commits.
+   */
+  public void slotBooked(final AppointmentSlot slot) {
+
+    afterCommit(() -> set(slot, true));
+  }
+
+  /**
+   * Marks the slot's room as free once the surrounding transaction commits.
+   */
+  public void slotReleased(final AppointmentSlot slot) {
+
+    afterCommit(() -> set(slot, false));
+  }
+
+  private void set(final AppointmentSlot slot, final boolean occupied) {
+
+    final DayOccupancy day = days.get(slot.getStart().toLocalDate());
+    if (day != null && slot.getRoom() != null) {
+      day.set(slot.getStart(), slot.getRoom().getId(), occupied);
+    }
+  }
+
+  private void afterCommit(final Runnable update) {
+
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      update.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+
+        update.run();
+      }
+    });
+
+  }
+
+  /**
+   * The rooms of one day, indexed in the order of their schedules. {@code roomsByStart} lists the
+   * rooms starting at each time.
+   */
+  private static final class DayOccupancy {
+
+    private final LocalDateTime startOfDay;
+
+    // How long each room is occupied by an appointment, including turnover
+    private final List<Duration> lengths = new ArrayList<>();
+
+    // Guarded by this
+    private final List<BitSet> occupied = new ArrayList<>();
+
+    private final Map<RoomType, NavigableMap<LocalDateTime, int[]>> roomsByStart =
+        new EnumMap<>(RoomType.class);
+
+    private final Map<Long, Integer> indexesByRoomId = new HashMap<>();
+
+    private DayOccupancy(final LocalDate date, final List<RoomSchedule> rooms) {
+
+      startOfDay = date.atStartOfDay();
+      final Map<RoomType, NavigableMap<LocalDateTime, List<Integer>>> roomLists =
+          new EnumMap<>(RoomType.class);
+      for (final RoomSchedule room : rooms) {
+        final int index = lengths.size();
+        lengths.add(room.getLength().plus(room.getTurnover()));
+        occupied.add(new BitSet());
+        indexesByRoomId.put(room.getRoom().getId(), index);
+        for (final LocalDateTime start : room.getStarts()) {
+          roomLists.computeIfAbsent(room.getRoomType(), type -> new TreeMap<>())
+              .computeIfAbsent(start, s -> new ArrayList<>())
+              .add(index);
+        }
+      }
+      roomLists.forEach((roomType, starts) -> {
+        final NavigableMap<LocalDateTime, int[]> roomIndexes = new TreeMap<>();
+        starts.forEach((start, indexes) -> roomIndexes.put(start,
+            indexes.stream().mapToInt(Integer::intValue).toArray()));
+        roomsByStart.put(roomType, roomIndexes);
+      });
+    }
+
+    private Iterable<LocalDateTime> getStartsAfter(final RoomType roomType,
+        final LocalDateTime after) {
+
+      final NavigableMap<LocalDateTime, int[]> starts = roomsByStart.get(roomType);
+      return starts == null ? List.of() : starts.tailMap(after, false).keySet();
+    }
+
+    private synchronized int countOpenSeats(final LocalDateTime start, final RoomType roomType) {
+
+      int openSeats = 0;
+      for (final int room : getRooms(start, roomType)) {
+        if (isFree(room, start)) {
+          openSeats++;
+        }
+      }
+      return openSeats;
+    }
+
+    private synchronized boolean isRoomFree(final LocalDateTime start, final long roomId) {
+
+      final Integer room = indexesByRoomId.get(roomId);
+      return room == null || isFree(room, start);
+    }
+
+    /**
+     * @return false if the room isn't used on this day
+     */
+    private synchronized boolean set(final LocalDateTime start, final long roomId,
+        final boolean value) {
+
+      final Integer room = indexesByRoomId.get(roomId);
+      if (room == null) {
+        return false;
+      }
+      occupied.get(room).set(toTick(start), toTick(start.plus(lengths.get(room))), value);
+      return true;
+    }
+
+    private boolean isFree(final int room, final LocalDateTime start) {
+
+      final int firstTick = toTick(start);
+      final int nextOccupied = occupied.get(room).nextSetBit(firstTick);
+      return nextOccupied < 0 || nextOccupied >= toTick(start.plus(lengths.get(room)));
+    }
+
+    /**
+     * Counted from the start of the day, so an appointment that runs past midnight takes ticks
+     * past the end of the day rather than wrapping around to its start.
+     */
+    private int toTick(final LocalDateTime time) {
+
+      return (int) (Duration.between(startOfDay, time).toMinutes() / MINUTES_PER_TICK);
+    }
+
+    private int[] getRooms(final LocalDateTime start, final RoomType roomType) {
+
+      final NavigableMap<LocalDateTime, int[]> starts = roomsByStart.get(roomType);
+      final int[] rooms = starts == null ? null : starts.get(start);
+      return rooms == null ? new int[0] : rooms;
+    }
+
+  }
+
+}
@@ -0,0 +1,221 @@
+package org.lamikvah.website.service;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import lombok.Value;
+import org.lamikvah.website.MikvahConfiguration;
+import org.lamikvah.website.dao.RoomRepository;
+import org.lamikvah.website.data.AvailableDateTimeAndRoomType;
+import org.lamikvah.website.data.DailyHours;
+import org.lamikvah.website.data.Room;
+import org.lamikvah.website.data.RoomAvailabilityWindow;
+import org.lamikvah.website.data.RoomType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Works out the appointment slots of a day from its hours and the {@link Room}s, so only booked
+ * slots are stored. Each room's appointments are packed into the parts of the day it's available,
+ * with its turnover time between them. The seats at a start time are the rooms of a type that
+ * start then, and bookings record which room they took, so rooms can be added, removed or
+ * reordered without moving existing bookings. Rooms are read again every few minutes, so changes
+ * to them don't need a restart.
+ */
+@Component
+public class SlotGrid {
+
+  private static final long ROOM_REFRESH_MINUTES = 5;
+
+  @Autowired
+  private MikvahConfiguration config;
+
+  @Autowired
+  private DailyHoursService dailyHoursService;
+
+  @Autowired
+  private ZmanimCache zmanimCache;
+
+  @Autowired
+  private RoomRepository roomRepository;
+
+  private final Supplier<List<Room>> rooms = Suppliers.memoizeWithExpiration(
+      () -> List.copyOf(roomRepository.findByActiveTrueOrderByPositionAsc()), ROOM_REFRESH_MINUTES,
+      TimeUnit.MINUTES);
+
+  /**
+   * @return how many seats each start time and room type of the day has, sorted by time and then
+   *         room type
+   */
+  public List<AvailableDateTimeAndRoomType> getSlots(final DailyHours hours) {
+
+    final NavigableMap<LocalDateTime, Map<RoomType, Integer>> seats = new TreeMap<>();
+    for (final RoomSchedule schedule : getRoomSchedules(hours)) {
+      for (final LocalDateTime start : schedule.getStarts()) {
+        seats.computeIfAbsent(start, s -> new EnumMap<>(RoomType.class))
+            .merge(schedule.getRoomType(), 1, Integer::sum);
+      }
+    }
+
+    final List<AvailableDateTimeAndRoomType> slots = new ArrayList<>();
+    seats.forEach((start, seatsForStart) -> seatsForStart.forEach(
+        (roomType, count) -> slots.add(new AvailableDateTimeAndRoomType(start, roomType, count))));
+    return slots;
+
+  }
+
+  /**
+   * @return when each room starts its appointments on the day, in the order of the rooms
+   */
+  public List<RoomSchedule> getRoomSchedules(final DailyHours hours) {
+
+    final LocalDate day = hours.getDay().toLocalDate();
+    if (hours.isClosed() || !hours.getOpeningLocalTime().isPresent()
+        || !hours.getClosingLocalTime().isPresent() || isLeilYomTovOrShabbos(day)) {
+      return ImmutableList.of();
+    }
+    final LocalDateTime opening = LocalDateTime.of(day, hours.getOpeningLocalTime().get());
+    final LocalDateTime closing = LocalDateTime.of(day, hours.getClosingLocalTime().get());
+
+    final List<RoomSchedule> schedules = new ArrayList<>();
+    for (final Room room : rooms.get()) {
+      final Duration length = Duration.ofMinutes(room.getDurationMinutes());
+      final Duration turnover = Duration.ofMinutes(room.getTurnoverMinutes());
+      final List<LocalDateTime> starts = new ArrayList<>();
+      for (final Interval window : getAvailableWindows(room, opening, closing)) {
+        LocalDateTime start = window.getStart();
+        while (!start.plus(length).isAfter(window.getEnd())) {
+          starts.add(start);
+          start = start.plus(length).plus(turnover);
+        }
+      }
+      schedules.add(new RoomSchedule(room, length, turnover, starts));
+    }
+    return schedules;
+
+  }
+
+  /**
+   * @return the rooms of the type that start an appointment at the given time, in order, or none
+   *         if it can't be booked, such as when the mikvah is closed or it's too far ahead
+   */
+  public List<Room> getRooms(final LocalDateTime start, final RoomType roomType) {
+
+    final LocalDate day = start.toLocalDate();
+    final LocalDate today = LocalDate.now(ZoneId.of(config.getTimeZone()));
+    if (day.isBefore(today) || day.isAfter(today.plusDays(config.getBookingHorizonDays()))) {
+      return ImmutableList.of();
+    }
+    return dailyHoursService.getHoursForDay(day)
+        .map(this::getRoomSchedules)
+        .orElse(ImmutableList.of())
+        .stream()
+        .filter(schedule -> schedule.getRoomType() == roomType
+            && schedule.getStarts().contains(start))
+        .map(RoomSchedule::getRoom)
+        .collect(Collectors.toList());
+
+  }
+
+  /**
+   * @return the parts of the day the room can take appointments, in order, from its first start
+   *         until closing
+   */
+  private List<Interval> getAvailableWindows(final Room room, final LocalDateTime opening,
+      final LocalDateTime closing) {
+
+    final LocalDateTime firstStart = opening.plusMinutes(room.getFirstStartMinutes());
+    final DayOfWeek dayOfWeek = opening.getDayOfWeek();
+    final List<RoomAvailabilityWindow> windows = room.getAvailabilityWindows().stream()
+        .filter(window -> window.getDayOfWeek() == null || window.getDayOfWeek() == dayOfWeek)
+        .sorted(Comparator.comparing(RoomAvailabilityWindow::getOpens))
+        .collect(Collectors.toList());
+    if (windows.isEmpty()) {
+      return ImmutableList.of(new Interval(firstStart, closing));
+    }
+
+    final List<Interval> intervals = new ArrayList<>();
+    for (final RoomAvailabilityWindow window : windows) {
+      final LocalDateTime opens =
+          max(firstStart, LocalDateTime.of(opening.toLocalDate(), window.getOpens()));
+      final LocalDateTime closes =
+          min(closing, LocalDateTime.of(opening.toLocalDate(), window.getCloses()));
+      if (!opens.isBefore(closes)) {
+        continue;
+      }
+      final int last = intervals.size() - 1;
+      if (last >= 0 && !opens.isAfter(intervals.get(last).getEnd())) {
+        // Overlapping windows are merged, so appointments are packed across both
+        intervals.set(last, new Interval(intervals.get(last).getStart(),
+            max(closes, intervals.get(last).getEnd())));
+      } else {
+        intervals.add(new Interval(opens, closes));
+      }
+    }
+    return intervals;
+
+  }
+
+  private static LocalDateTime max(final LocalDateTime a, final LocalDateTime b) {
+
+    return a.isAfter(b) ? a : b;
+  }
+
+  private static LocalDateTime min(final LocalDateTime a, final LocalDateTime b) {
+
+    return a.isBefore(b) ? a : b;
+  }
+
+  private boolean isLeilYomTovOrShabbos(final LocalDate date) {
+
+    if (date.getDayOfWeek() == DayOfWeek.FRIDAY) {
+      return true;
+    }
+    final int yomTovIndex = zmanimCache.getYomTovIndex(date.plusDays(1));
+    return DailyHoursCreationService.YOM_TOV_INDEXES.contains(yomTovIndex);
+
+  }
+
+  @Value
+  public static class RoomSchedule {
+
+    Room room;
+
+    Duration length;
+
+    /**
+     * How long the room stays occupied after each appointment
+     */
+    Duration turnover;
+
+    List<LocalDateTime> starts;
+
+    public RoomType getRoomType() {
+
+      return room.getRoomType();
+    }
+  }
+
+  @Value
+  private static class Interval {
+
+    LocalDateTime start;
+
+    LocalDateTime end;
+  }
+
+}
@@ -0,0 +1,196 @@
+package org.lamikvah.website.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.lamikvah.website.MikvahConfiguration;
+import org.lamikvah.website.MikvahConfiguration.SmtpPoolProperties;
+import org.simplejavamail.converter.EmailConverter;
+import org.simplejavamail.email.Email;
+import org.simplejavamail.mailer.Mailer;
+import org.simplejavamail.mailer.ServerConfig;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps authenticated SMTP connections open between emails so each send doesn't pay for a new
+ * TLS handshake and login. Uses the session and server settings of the {@link Mailer}.
+ */
+@Component
+@Slf4j
+public class SmtpConnectionPool {
+
+  private static final long THIRTY_SECONDS = 30000;
+
+  private final Mailer mailer;
+
+  private final SmtpPoolProperties properties;
+
+  private final Semaphore permits;
+
+  private final BlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+
+  private final AtomicInteger openConnections = new AtomicInteger();
+
+  private final Counter connectionsOpened;
+
+  private final Counter connectionsDiscarded;
+
+  public SmtpConnectionPool(final Mailer mailer, final MikvahConfiguration config,
+      final MeterRegistry meterRegistry) {
+
+    this.mailer = mailer;
+    properties = config.getSmtpPool();
+    permits = new Semaphore(properties.getSize(), true);
+    meterRegistry.gauge("mikvah.email.smtp.connections.open", openConnections);
+    meterRegistry.gauge("mikvah.email.smtp.connections.idle", idleConnections,
+        BlockingDeque::size);
+    connectionsOpened = meterRegistry.counter("mikvah.email.smtp.connections.opened");
+    connectionsDiscarded = meterRegistry.counter("mikvah.email.smtp.connections.discarded");
+  }
+
+  public void send(final Email email) throws MessagingException, InterruptedException {
+
+    final MimeMessage message = EmailConverter.emailToMimeMessage(email, mailer.getSession());
+    message.saveChanges();
+
+    if (!permits.tryAcquire(properties.getBorrowTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+      throw new MessagingException("Timed out waiting for an SMTP connection");
+    }
+    try {
+      final PooledConnection connection = borrow();
+      try {
+        connection.transport.sendMessage(message, message.getAllRecipients());
+      } catch (final MessagingException | RuntimeException e) {
+        // The server may have dropped us mid-conversation, don't hand this one out again
+        discard(connection);
+        throw e;
+      }
+      release(connection);
+    } finally {
+      permits.release();
+    }
+
+  }
+
+  /**
+   * Closes connections that have sat idle past the keep-alive or lived past the max age, so the
+   * server isn't the one hanging up on us.
+   */
+  @Scheduled(initialDelay = THIRTY_SECONDS, fixedDelay = THIRTY_SECONDS)
+  public void closeExpiredConnections() {
+
+    final long now = System.nanoTime();
+    for (final PooledConnection connection : new ArrayList<>(idleConnections)) {
+      if (isExpired(connection, now) && idleConnections.remove(connection)) {
+        discard(connection);
+      }
+    }
+
+  }
+
+  @PreDestroy
+  public void shutdown() {
+
+    PooledConnection connection;
+    while ((connection = idleConnections.pollFirst()) != null) {
+      discard(connection);
+    }
+
+  }
+
+  /**
+   * Opens and authenticates a new connection to the mail server.
+   */
+  protected Transport connect() throws MessagingException {
+
+    final Session session = mailer.getSession();
+    final ServerConfig server = mailer.getServerConfig();
+    final Transport transport = session.getTransport();
+    transport.connect(server.getHost(), server.getPort(), server.getUsername(),
+        server.getPassword());
+    return transport;
+
+  }
+
+  private PooledConnection borrow() throws MessagingException {
+
+    final long now = System.nanoTime();
+    PooledConnection connection;
+    // Take the most recently used connection, it's the most likely to still be open
+    while ((connection = idleConnections.pollFirst()) != null) {
+      if (isExpired(connection, now)) {
+        discard(connection);
+      } else if (now - connection.lastUsedNanos > properties.getValidateAfterIdle().toNanos()
+          && !connection.transport.isConnected()) {
+        log.debug("Discarding SMTP connection that failed its health check.");
+        discard(connection);
+      } else {
+        return connection;
+      }
+    }
+
+    final Transport transport = connect();
+    openConnections.incrementAndGet();
+    connectionsOpened.increment();
+    return new PooledConnection(transport, now);
+
+  }
+
+  private void release(final PooledConnection connection) {
+
+    connection.lastUsedNanos = System.nanoTime();
+    if (connection.lastUsedNanos - connection.openedNanos >= properties.getMaxAge().toNanos()) {
+      discard(connection);
+    } else {
+      idleConnections.offerFirst(connection);
+    }
+
+  }
+
+  private boolean isExpired(final PooledConnection connection, final long now) {
+
+    return now - connection.openedNanos >= properties.getMaxAge().toNanos()
+        || now - connection.lastUsedNanos >= properties.getKeepAlive().toNanos();
+
+  }
+
+  private void discard(final PooledConnection connection) {
+
+    openConnections.decrementAndGet();
+    connectionsDiscarded.increment();
+    try {
+      connection.transport.close();
+    } catch (final MessagingException e) {
+      log.debug("Failed to cleanly close SMTP connection.", e);
+    }
+
+  }
+
+  private static class PooledConnection {
+
+    private final Transport transport;
+
+    private final long openedNanos;
+
+    private volatile long lastUsedNanos;
+
+    private PooledConnection(final Transport transport, final long openedNanos) {
+      this.transport = transport;
+      this.openedNanos = openedNanos;
+      this.lastUsedNanos = openedNanos;
+    }
+  }
+
+}
@@ -0,0 +1,145 @@
+package org.lamikvah.website.service;
+
+import com.stripe.model.Card;
+import com.stripe.model.Customer;
+import com.stripe.model.Event;
+import com.stripe.model.Invoice;
+import com.stripe.model.StripeObject;
+import com.stripe.model.Subscription;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.lamikvah.website.dao.StripeEventDeadLetterRepository;
+import org.lamikvah.website.dao.StripeEventInboxRepository;
+import org.lamikvah.website.data.DeadLetterStripeEvent;
+import org.lamikvah.website.data.InboxStripeEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * The database side of the Stripe webhook inbox. Events are claimed with a lease, so they can be
+ * processed outside of any transaction and are picked up again if the worker dies part way.
+ */
+@Component
+@Slf4j
+public class StripeEventInboxService {
+
+  static final int MAX_ATTEMPTS = 8;
+
+  /**
+   * Longer than processing a whole batch should ever take
+   */
+  private static final Duration LEASE = Duration.ofMinutes(5);
+
+  @Autowired
+  private StripeEventInboxRepository repo;
+
+  @Autowired
+  private StripeEventDeadLetterRepository deadLetterRepo;
+
+  /**
+   * @return whether this is the first time the event was received
+   */
+  @Transactional
+  public boolean record(final Event event, final String payload) {
+
+    final String customerId =
+        event.getDataObjectDeserializer().getObject().map(StripeEventInboxService::getCustomerId)
+            .orElse(null);
+    final LocalDateTime stripeCreated =
+        LocalDateTime.ofEpochSecond(event.getCreated(), 0, ZoneOffset.UTC);
+    return repo.insertIfAbsent(event.getId(), event.getType(), customerId, payload, stripeCreated,
+        LocalDateTime.now(Clock.systemUTC())) > 0;
+
+  }
+
+  /**
+   * Claims up to {@code limit} due events, at most one per customer, counting this as an attempt
+   * for each of them.
+   */
+  @Transactional
+  public List<InboxStripeEvent> claimDueEvents(final int limit) {
+
+    final LocalDateTime now = LocalDateTime.now(Clock.systemUTC());
+    final List<InboxStripeEvent> events = repo.findDueForUpdate(now, limit);
+    for (final InboxStripeEvent event : events) {
+      event.setAttempts(event.getAttempts() + 1);
+      event.setNextAttempt(now.plus(LEASE));
+    }
+    repo.saveAll(events);
+    return events;
+
+  }
+
+  @Transactional
+  public void markProcessed(final InboxStripeEvent event) {
+
+    repo.markProcessed(event.getStripeEventId(), LocalDateTime.now(Clock.systemUTC()), null);
+
+  }
+
+  @Transactional
+  public void markFailed(final InboxStripeEvent event, final Duration retryAfter,
+      final String error) {
+
+    repo.markFailed(event.getStripeEventId(), LocalDateTime.now(Clock.systemUTC()).plus(retryAfter),
+        error);
+
+  }
+
+  /**
+   * Gives up on the event, which lets the customer's later events be processed.
+   */
+  @Transactional
+  public void deadLetter(final InboxStripeEvent event, final String error) {
+
+    final LocalDateTime now = LocalDateTime.now(Clock.systemUTC());
+    deadLetterRepo.save(DeadLetterStripeEvent.builder()
+        .stripeEventId(event.getStripeEventId())
+        .eventType(event.getEventType())
+        .customerId(event.getCustomerId())
+        .payload(event.getPayload())
+        .attempts(event.getAttempts())
+        .lastError(error)
+        .failed(now)
+        .build());
+    repo.markProcessed(event.getStripeEventId(), now, error);
+
+  }
+
+  public long countUnprocessed() {
+
+    return repo.countUnprocessed();
+
+  }
+
+  @Transactional
+  public int deleteProcessedBefore(final LocalDateTime before) {
+
+    return repo.deleteProcessedBefore(before);
+
+  }
+
+  private static String getCustomerId(final StripeObject object) {
+
+    if (object instanceof Invoice) {
+      return ((Invoice) object).getCustomer();
+    }
+    if (object instanceof Subscription) {
+      return ((Subscription) object).getCustomer();
+    }
+    if (object instanceof Customer) {
+      return ((Customer) object).getId();
+    }
+    if (object instanceof Card) {
+      return ((Card) object).getCustomer();
+    }
+    return null;
+
+  }
+
+}
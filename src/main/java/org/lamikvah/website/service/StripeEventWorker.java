@@ -0,0 +1,207 @@
+package org.lamikvah.website.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.stripe.model.Card;
+import com.stripe.model.Customer;
+import com.stripe.model.Event;
+import com.stripe.model.Invoice;
+import com.stripe.model.StripeObject;
+import com.stripe.model.Subscription;
+import com.stripe.net.ApiResource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.lamikvah.website.MikvahConfiguration;
+import org.lamikvah.website.data.InboxStripeEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Processes the Stripe webhook events in the inbox on a small pool of threads. Each customer's
+ * events are processed one at a time in the order Stripe created them, and failures are retried
+ * with exponential backoff before being dead lettered.
+ */
+@Component
+@Slf4j
+public class StripeEventWorker {
+
+  private static final long ONE_SECOND = 1000;
+
+  private static final long TWENTY_FOUR_HOURS = 86400000;
+
+  private static final Duration FIRST_RETRY = Duration.ofSeconds(30);
+
+  private static final Duration LONGEST_RETRY = Duration.ofHours(1);
+
+  private static final Duration LONGEST_RUN = Duration.ofSeconds(30);
+
+  private static final int DAYS_TO_KEEP_PROCESSED_EVENTS = 30;
+
+  @Autowired
+  private StripeEventInboxService inbox;
+
+  @Autowired
+  private MembershipService membershipService;
+
+  @Autowired
+  private EmailService emailService;
+
+  @Autowired
+  private CreditCardService creditCardService;
+
+  private final MikvahConfiguration config;
+
+  private final ExecutorService processors;
+
+  private final AtomicLong unprocessedEvents = new AtomicLong();
+
+  private final Timer processTimer;
+
+  private final Timer deliveryDelayTimer;
+
+  private final Counter failures;
+
+  private final Counter deadLettered;
+
+  public StripeEventWorker(final MikvahConfiguration config, final MeterRegistry meterRegistry) {
+
+    this.config = config;
+    processors = Executors.newFixedThreadPool(config.getStripeEventWorkerThreads(),
+        new ThreadFactoryBuilder().setNameFormat("stripe-event-%d").build());
+    meterRegistry.gauge("mikvah.stripe.inbox.depth", unprocessedEvents);
+    processTimer = meterRegistry.timer("mikvah.stripe.event.process");
+    deliveryDelayTimer = meterRegistry.timer("mikvah.stripe.inbox.delay");
+    failures = meterRegistry.counter("mikvah.stripe.event.failures");
+    deadLettered = meterRegistry.counter("mikvah.stripe.event.dead_lettered");
+  }
+
+  /**
+   * Processes due events a batch at a time. Only the oldest unprocessed event of each customer is
+   * claimed, so a full batch means more may be waiting and another is claimed right away, up to a
+   * time limit that gives other scheduled jobs a turn during a large backlog.
+   */
+  @Scheduled(initialDelay = ONE_SECOND, fixedDelay = ONE_SECOND)
+  public void processDueEvents() {
+
+    final long startNanos = System.nanoTime();
+    List<InboxStripeEvent> batch;
+    do {
+      batch = inbox.claimDueEvents(config.getStripeEventBatchSize());
+      final List<CompletableFuture<Void>> processing = new ArrayList<>(batch.size());
+      for (final InboxStripeEvent event : batch) {
+        processing.add(CompletableFuture.runAsync(() -> process(event), processors));
+      }
+      CompletableFuture.allOf(processing.toArray(new CompletableFuture[0])).join();
+    } while (batch.size() == config.getStripeEventBatchSize()
+        && System.nanoTime() - startNanos < LONGEST_RUN.toNanos());
+
+    unprocessedEvents.set(inbox.countUnprocessed());
+
+  }
+
+  @Scheduled(initialDelay = TWENTY_FOUR_HOURS, fixedRate = TWENTY_FOUR_HOURS)
+  public void deleteOldProcessedEvents() {
+
+    final int deleted = inbox.deleteProcessedBefore(
+        LocalDateTime.now(Clock.systemUTC()).minusDays(DAYS_TO_KEEP_PROCESSED_EVENTS));
+    log.info("Deleted {} processed Stripe events from the inbox.", deleted);
+
+  }
+
+  private void process(final InboxStripeEvent inboxEvent) {
+
+    final long startNanos = System.nanoTime();
+    try {
+      handle(ApiResource.GSON.fromJson(inboxEvent.getPayload(), Event.class));
+      processTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+      deliveryDelayTimer.record(
+          Duration.between(inboxEvent.getReceived(), LocalDateTime.now(Clock.systemUTC())));
+      inbox.markProcessed(inboxEvent);
+    } catch (final Exception e) {
+      failures.increment();
+      final int attempts = inboxEvent.getAttempts();
+      final String error = String.valueOf(e.getMessage());
+      if (attempts >= StripeEventInboxService.MAX_ATTEMPTS) {
+        log.error("Giving up on Stripe event {} of type={} after {} attempts.",
+            inboxEvent.getStripeEventId(), inboxEvent.getEventType(), attempts, e);
+        deadLettered.increment();
+        inbox.deadLetter(inboxEvent, error);
+      } else {
+        log.warn("Failed to process Stripe event {} of type={} on attempt {}, will retry.",
+            inboxEvent.getStripeEventId(), inboxEvent.getEventType(), attempts, e);
+        inbox.markFailed(inboxEvent, getRetryDelay(attempts), error);
+      }
+    }
+
+  }
+
+  private void handle(final Event event) {
+
+    final String eventType = event.getType();
+    final Optional<StripeObject> optionalObject = event.getDataObjectDeserializer().getObject();
+    if (!optionalObject.isPresent()) {
+      log.warn("Received event that could not be deserielized!!! event={}", event);
+      return;
+    }
+    final StripeObject object = optionalObject.get();
+    switch (eventType) {
+      case "invoice.upcoming":
+        final Invoice upcomingInvoice = (Invoice) object;
+        log.info("Sending email about upcoming membership renewal: {}", upcomingInvoice);
+        emailService.sendUpcomingRenewalEmail(upcomingInvoice);
+        break;
+      case "invoice.payment_succeeded":
+        final Invoice invoice = (Invoice) object;
+        membershipService.updateMembersip(invoice);
+        break;
+      case "customer.subscription.deleted":
+        final Subscription subscription = (Subscription) object;
+        membershipService.cancelMembership(subscription);
+        break;
+      case "customer.updated":
+        final Customer customer = (Customer) object;
+        creditCardService.refreshCreditCard(customer.getId());
+        break;
+      case "customer.source.created":
+      case "customer.source.updated":
+      case "customer.source.deleted":
+      case "customer.source.expiring":
+        if (object instanceof Card) {
+          creditCardService.refreshCreditCard(((Card) object).getCustomer());
+        }
+        break;
+      default:
+        log.debug("Received event of type={}", eventType);
+    }
+
+  }
+
+  private Duration getRetryDelay(final int attempts) {
+
+    final Duration delay = FIRST_RETRY.multipliedBy(1L << Math.min(attempts - 1, 16));
+    return delay.compareTo(LONGEST_RETRY) > 0 ? LONGEST_RETRY : delay;
+
+  }
+
+  @PreDestroy
+  public void shutdown() {
+
+    processors.shutdown();
+
+  }
+
+}
@@ -0,0 +1,177 @@
+package org.lamikvah.website.service;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.TimeZone;
+import javax.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.lamikvah.website.MikvahConfiguration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import net.sourceforge.zmanim.ComplexZmanimCalendar;
+import net.sourceforge.zmanim.hebrewcalendar.JewishCalendar;
+import net.sourceforge.zmanim.util.GeoLocation;
+
+/**
+ * Tzeis, candle lighting and yom tov index for the mikvah's location, computed once for a
+ * rolling year and kept in arrays indexed by day, so the hourly jobs don't have to build zmanim
+ * and Jewish calendars over and over.
+ */
+@Component
+@Slf4j
+public class ZmanimCache {
+
+  /**
+   * Hours are calculated starting from the previous Sunday.
+   */
+  private static final int DAYS_BEFORE_TODAY = 7;
+
+  private static final int DAYS_AFTER_TODAY = 366;
+
+  private static final int NO_TIME = -1;
+
+  private static final long TWENTY_FOUR_HOURS = 86400000;
+
+  @Autowired
+  private MikvahConfiguration config;
+
+  private ZoneId timezone;
+
+  private GeoLocation location;
+
+  private volatile Table table;
+
+  @PostConstruct
+  public void initialize() {
+
+    timezone = ZoneId.of(config.getTimeZone());
+    final String locationName = "Los Angeles, CA";
+    final double latitude = 34.0549987; // Los Angeles, CA
+    final double longitude = -118.3969812; // Los Angeles, CA
+    final double elevation = 65; // optional elevation
+    location = new GeoLocation(locationName, latitude, longitude, elevation,
+        TimeZone.getTimeZone(timezone));
+    refresh();
+
+  }
+
+  @Scheduled(initialDelay = TWENTY_FOUR_HOURS, fixedRate = TWENTY_FOUR_HOURS)
+  public void refresh() {
+
+    final LocalDate firstDay = LocalDate.now(timezone).minusDays(DAYS_BEFORE_TODAY);
+    table = computeTable(firstDay, DAYS_BEFORE_TODAY + DAYS_AFTER_TODAY + 1);
+    log.debug("Computed zmanim starting from {}", firstDay);
+
+  }
+
+  public ZoneId getTimezone() {
+
+    return timezone;
+  }
+
+  /**
+   * @return tzeis on the given day, to the second
+   */
+  public LocalTime getTzeis(final LocalDate day) {
+
+    final Table days = tableFor(day);
+    return toLocalTime(days.tzeis[days.indexOf(day)]);
+  }
+
+  /**
+   * @return candle lighting on the given day, to the second
+   */
+  public LocalTime getCandleLighting(final LocalDate day) {
+
+    final Table days = tableFor(day);
+    return toLocalTime(days.candleLighting[days.indexOf(day)]);
+  }
+
+  /**
+   * @return the {@link JewishCalendar#getYomTovIndex()} of the given day
+   */
+  public int getYomTovIndex(final LocalDate day) {
+
+    final Table days = tableFor(day);
+    return days.yomTovIndex[days.indexOf(day)];
+  }
+
+  private Table tableFor(final LocalDate day) {
+
+    final Table current = table;
+    if (current.contains(day)) {
+      return current;
+    }
+    // Outside of the cached year, which only happens for unusual lookups
+    return computeTable(day, 1);
+
+  }
+
+  private Table computeTable(final LocalDate firstDay, final int days) {
+
+    final int[] tzeis = new int[days];
+    final int[] candleLighting = new int[days];
+    final byte[] yomTovIndex = new byte[days];
+
+    final ComplexZmanimCalendar zmanimCalendar = new ComplexZmanimCalendar(location);
+    for (int i = 0; i < days; i++) {
+      final LocalDate day = firstDay.plusDays(i);
+      zmanimCalendar.getCalendar().set(day.getYear(), day.getMonthValue() - 1,
+          day.getDayOfMonth());
+      tzeis[i] = toSecondOfDay(zmanimCalendar.getTzais());
+      candleLighting[i] = toSecondOfDay(zmanimCalendar.getCandleLighting());
+      final JewishCalendar jewishCalendar = new JewishCalendar(
+          java.util.Date.from(day.atStartOfDay(timezone).toInstant()));
+      yomTovIndex[i] = (byte) jewishCalendar.getYomTovIndex();
+    }
+    return new Table(firstDay, tzeis, candleLighting, yomTovIndex);
+
+  }
+
+  private int toSecondOfDay(final java.util.Date date) {
+
+    if (date == null) {
+      return NO_TIME;
+    }
+    return date.toInstant().atZone(timezone).toLocalTime().truncatedTo(ChronoUnit.SECONDS)
+        .toSecondOfDay();
+  }
+
+  private LocalTime toLocalTime(final int secondOfDay) {
+
+    return secondOfDay == NO_TIME ? null : LocalTime.ofSecondOfDay(secondOfDay);
+  }
+
+  private static final class Table {
+
+    private final LocalDate firstDay;
+    private final int[] tzeis;
+    private final int[] candleLighting;
+    private final byte[] yomTovIndex;
+
+    private Table(final LocalDate firstDay, final int[] tzeis, final int[] candleLighting,
+        final byte[] yomTovIndex) {
+
+      this.firstDay = firstDay;
+      this.tzeis = tzeis;
+      this.candleLighting = candleLighting;
+      this.yomTovIndex = yomTovIndex;
+    }
+
+    private boolean contains(final LocalDate day) {
+
+      final long index = ChronoUnit.DAYS.between(firstDay, day);
+      return index >= 0 && index < tzeis.length;
+    }
+
+    private int indexOf(final LocalDate day) {
+
+      return (int) ChronoUnit.DAYS.between(firstDay, day);
+    }
+
+  }
+
+}
@@ -0,0 +1,20 @@
+CREATE SEQUENCE email_outbox_seq INCREMENT BY 50;
+
+CREATE TABLE email_outbox (
+    id int8 NOT NULL,
+    recipients text NOT NULL,
+    subject varchar(255) NOT NULL,
+    text_body text NOT NULL,
+    html_body text NOT NULL,
+    created timestamp NOT NULL,
+    next_attempt timestamp NOT NULL,
+    attempts int4 NOT NULL DEFAULT 0,
+    sent timestamp NULL,
+    last_error text NULL,
+    PRIMARY KEY (id)
+)
+WITH (
+    OIDS=FALSE
+) ;
+-- Only unsent emails are ever looked up by the worker
+CREATE INDEX email_outbox_pending_idx ON email_outbox USING btree (next_attempt) WHERE sent IS NULL;
@@ -0,0 +1,43 @@
+-- Webhook events are now stored on receipt and processed afterwards. The table they used to be
+-- deduplicated against becomes the inbox, so it keeps doing that job.
+ALTER TABLE processed_stripe_event RENAME TO stripe_event_inbox;
+
+ALTER TABLE stripe_event_inbox
+    ADD COLUMN event_type varchar(255) NULL,
+    ADD COLUMN customer_id varchar(255) NULL,
+    ADD COLUMN payload text NULL,
+    ADD COLUMN stripe_created timestamp NULL,
+    ADD COLUMN received timestamp NULL,
+    ADD COLUMN next_attempt timestamp NULL,
+    ADD COLUMN attempts int4 NOT NULL DEFAULT 0,
+    ADD COLUMN processed timestamp NULL,
+    ADD COLUMN last_error text NULL;
+
+UPDATE stripe_event_inbox
+SET stripe_created = now() AT TIME ZONE 'utc',
+    received = now() AT TIME ZONE 'utc',
+    next_attempt = now() AT TIME ZONE 'utc',
+    processed = now() AT TIME ZONE 'utc';
+
+ALTER TABLE stripe_event_inbox
+    ALTER COLUMN stripe_created SET NOT NULL,
+    ALTER COLUMN received SET NOT NULL,
+    ALTER COLUMN next_attempt SET NOT NULL;
+
+-- Only unprocessed events are ever looked up by the worker
+CREATE INDEX stripe_event_inbox_pending_idx ON stripe_event_inbox USING btree (next_attempt) WHERE processed IS NULL;
+CREATE INDEX stripe_event_inbox_customer_idx ON stripe_event_inbox USING btree (customer_id, stripe_created) WHERE processed IS NULL;
+
+CREATE TABLE stripe_event_dead_letter (
+    stripe_event_id varchar(255) NOT NULL,
+    event_type varchar(255) NULL,
+    customer_id varchar(255) NULL,
+    payload text NOT NULL,
+    attempts int4 NOT NULL,
+    last_error text NULL,
+    failed timestamp NOT NULL,
+    PRIMARY KEY (stripe_event_id)
+)
+WITH (
+    OIDS=FALSE
+) ;
@@ -0,0 +1,2 @@
+-- Lets the daily expiry job page through lapsed offline memberships by (expiration, id)
+CREATE INDEX membership_auto_renew_expiration_idx ON membership USING btree (auto_renew_enabled, expiration, id) ;
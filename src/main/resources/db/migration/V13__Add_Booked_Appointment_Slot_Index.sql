@@ -0,0 +1,2 @@
+-- Lets the admin appointment list page through only the booked slots by (start, id)
+CREATE INDEX appointment_slot_booked_start_idx ON appointment_slot USING btree (start, id) WHERE mikvah_user_id IS NOT NULL;
@@ -0,0 +1,35 @@
+-- Open slots are now worked out from the daily hours, so only booked and held slots are stored.
+-- Cancelled appointments are deleted, so the history keeps its own copy of what was booked.
+ALTER TABLE reservation_history_log
+    ADD COLUMN appointment_start timestamp NULL,
+    ADD COLUMN room_type varchar(255) NULL;
+
+UPDATE reservation_history_log l
+SET appointment_start = s.start, room_type = s.room_type
+FROM appointment_slot s
+WHERE s.id = l.appointment_slot_id;
+
+ALTER TABLE reservation_history_log
+    DROP CONSTRAINT reservation_history_log_appointment_slot_id_fkey,
+    ADD CONSTRAINT reservation_history_log_appointment_slot_id_fkey
+        FOREIGN KEY (appointment_slot_id) REFERENCES appointment_slot(id) ON DELETE SET NULL;
+
+DELETE FROM appointment_slot WHERE mikvah_user_id IS NULL;
+
+-- Booked slots at the same time are given seats in the order they were booked
+ALTER TABLE appointment_slot
+    ADD COLUMN seat int4 NULL;
+
+UPDATE appointment_slot s
+SET seat = numbered.seat
+FROM (
+    SELECT id, ROW_NUMBER() OVER (PARTITION BY start, room_type ORDER BY id) - 1 AS seat
+    FROM appointment_slot
+) numbered
+WHERE numbered.id = s.id;
+
+ALTER TABLE appointment_slot
+    ALTER COLUMN seat SET NOT NULL,
+    ADD CONSTRAINT appointment_slot_start_room_type_seat_key UNIQUE (start, room_type, seat);
+
+DELETE FROM materialization_watermark WHERE name = 'appointment_slots';
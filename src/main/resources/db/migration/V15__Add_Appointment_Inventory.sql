@@ -0,0 +1,35 @@
+-- One row per start time and room type that has been booked, counting its seats. Bookings take a
+-- seat with a conditional update of this row instead of searching the slots.
+CREATE TABLE appointment_inventory (
+    id bigserial NOT NULL,
+    "start" timestamp NOT NULL,
+    room_type varchar(255) NOT NULL,
+    capacity int4 NOT NULL,
+    booked int4 NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT appointment_inventory_start_room_type_key UNIQUE (start, room_type),
+    CHECK (booked >= 0)
+)
+WITH (
+    OIDS=FALSE
+) ;
+
+-- The capacity is brought up to date from the hours the next time the time is booked
+INSERT INTO appointment_inventory (start, room_type, capacity, booked)
+SELECT start, room_type, COUNT(*), COUNT(*)
+FROM appointment_slot
+GROUP BY start, room_type;
+
+ALTER TABLE appointment_slot
+    ADD COLUMN inventory_id int8 NULL;
+
+UPDATE appointment_slot s
+SET inventory_id = i.id
+FROM appointment_inventory i
+WHERE i.start = s.start AND i.room_type = s.room_type;
+
+ALTER TABLE appointment_slot
+    ALTER COLUMN inventory_id SET NOT NULL,
+    ADD FOREIGN KEY (inventory_id) REFERENCES appointment_inventory(id);
+
+CREATE INDEX appointment_slot_inventory_id_idx ON appointment_slot USING btree (inventory_id);
@@ -0,0 +1,42 @@
+-- Rooms used to be hardcoded. These are the same 5 showers and 7 baths.
+CREATE TABLE room (
+    id bigserial NOT NULL,
+    "name" varchar(64) NOT NULL,
+    room_type varchar(255) NOT NULL,
+    "position" int4 NOT NULL,
+    first_start_minutes int4 NOT NULL,
+    duration_minutes int4 NOT NULL,
+    turnover_minutes int4 NOT NULL DEFAULT 0,
+    active bool NOT NULL DEFAULT true,
+    PRIMARY KEY (id),
+    CHECK (duration_minutes > 0 AND turnover_minutes >= 0 AND first_start_minutes >= 0)
+)
+WITH (
+    OIDS=FALSE
+) ;
+
+CREATE TABLE room_availability_window (
+    room_id int8 NOT NULL,
+    day_of_week varchar(16) NULL,
+    opens time NOT NULL,
+    closes time NOT NULL,
+    FOREIGN KEY (room_id) REFERENCES room(id) ON DELETE CASCADE
+)
+WITH (
+    OIDS=FALSE
+) ;
+CREATE INDEX room_availability_window_room_id_idx ON room_availability_window USING btree (room_id);
+
+INSERT INTO room (name, room_type, position, first_start_minutes, duration_minutes) VALUES
+    ('Shower 1', 'SHOWER', 1, 25, 30),
+    ('Shower 2', 'SHOWER', 2, 25, 30),
+    ('Shower 3', 'SHOWER', 3, 30, 30),
+    ('Shower 4', 'SHOWER', 4, 30, 30),
+    ('Shower 5', 'SHOWER', 5, 35, 30),
+    ('Bath 1', 'BATH', 6, 0, 75),
+    ('Bath 2', 'BATH', 7, 0, 75),
+    ('Bath 3', 'BATH', 8, 5, 75),
+    ('Bath 4', 'BATH', 9, 5, 75),
+    ('Bath 5', 'BATH', 10, 10, 75),
+    ('Bath 6', 'BATH', 11, 10, 75),
+    ('Bath 7', 'BATH', 12, 10, 75);
@@ -0,0 +1,7 @@
+-- Emails that ran out of attempts are marked failed, so they can be counted and purged
+ALTER TABLE email_outbox
+    ADD COLUMN failed timestamp NULL;
+
+UPDATE email_outbox
+SET failed = now() AT TIME ZONE 'utc'
+WHERE sent IS NULL AND attempts >= 10;
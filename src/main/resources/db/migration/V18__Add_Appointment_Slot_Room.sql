@@ -0,0 +1,27 @@
+-- Appointments record their room instead of a seat number, which depended on the order of the
+-- active rooms and so moved bookings to other rooms whenever rooms were changed.
+ALTER TABLE appointment_slot
+    ADD COLUMN room_id int8 NULL REFERENCES room(id);
+
+-- A seat was the position among the active rooms of the type that start at the appointment's time.
+-- Rooms can't have availability windows yet, so they take appointments back to back from their
+-- first start until closing.
+UPDATE appointment_slot s
+SET room_id = numbered.room_id
+FROM (
+    SELECT s.id AS slot_id, r.id AS room_id,
+        ROW_NUMBER() OVER (PARTITION BY s.id ORDER BY r.position) - 1 AS seat
+    FROM appointment_slot s
+    JOIN daily_hours h ON h.day = s.start::date
+    JOIN room r ON r.room_type = s.room_type AND r.active
+    WHERE s.start >= h.day + h.opening + r.first_start_minutes * interval '1 minute'
+        AND s.start + r.duration_minutes * interval '1 minute' <= h.day + h.closing
+        AND EXTRACT(EPOCH FROM s.start - (h.day + h.opening + r.first_start_minutes * interval '1 minute'))::int8 / 60
+            % (r.duration_minutes + r.turnover_minutes) = 0
+) numbered
+WHERE numbered.slot_id = s.id AND numbered.seat = s.seat;
+
+ALTER TABLE appointment_slot
+    DROP CONSTRAINT appointment_slot_start_room_type_seat_key,
+    DROP COLUMN seat,
+    ADD CONSTRAINT appointment_slot_start_room_id_key UNIQUE (start, room_id);
@@ -0,0 +1,4 @@
+ALTER TABLE appointment_slot
+ADD hold_expiration timestamp NULL;
+
+CREATE INDEX appointment_slot_hold_expiration_idx ON appointment_slot USING btree (hold_expiration);
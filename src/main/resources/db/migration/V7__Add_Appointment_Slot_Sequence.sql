@@ -0,0 +1,4 @@
+-- Matches the allocation size on AppointmentSlot so ids can be handed out 50 at a time
+CREATE SEQUENCE appointment_slot_seq INCREMENT BY 50;
+
+SELECT setval('appointment_slot_seq', (SELECT COALESCE(MAX(id), 0) + 50 FROM appointment_slot));
@@ -0,0 +1,9 @@
+CREATE TABLE materialization_watermark (
+    "name" varchar(64) NOT NULL,
+    materialized_through date NOT NULL,
+    fingerprint varchar(255) NOT NULL,
+    PRIMARY KEY (name)
+)
+WITH (
+    OIDS=FALSE
+) ;
@@ -0,0 +1,12 @@
+CREATE TABLE credit_card_snapshot (
+    stripe_customer_id varchar NOT NULL,
+    brand varchar(255) NULL,
+    last4 varchar(4) NULL,
+    expiration_month int4 NOT NULL DEFAULT 0,
+    expiration_year int4 NOT NULL DEFAULT 0,
+    updated timestamp NOT NULL,
+    PRIMARY KEY (stripe_customer_id)
+)
+WITH (
+    OIDS=FALSE
+) ;
@@ -0,0 +1,46 @@
+package org.lamikvah.website;
+
+import com.auth0.exception.Auth0Exception;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.lamikvah.website.data.MikvahUser;
+import org.lamikvah.website.service.MikvahUserService;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AdminAccessTest {
+    private static final String SomeUserId = "some-user-id";
+
+    @Mock private MikvahUserService mikvahUserService;
+
+    @InjectMocks private AdminAccess subject;
+
+    @Test
+    void shouldOnlyAllowAdmins() throws Auth0Exception {
+        when(mikvahUserService.getUser(SomeUserId)).thenReturn(MikvahUser.builder().admin(true).build());
+        assertThat(subject.isAdmin(authenticated())).isTrue();
+
+        when(mikvahUserService.getUser(SomeUserId)).thenReturn(MikvahUser.builder().admin(false).build());
+        assertThat(subject.isAdmin(authenticated())).isFalse();
+    }
+
+    @Test
+    void shouldNotAllowAnyoneWhenTheUserCantBeLoaded() throws Auth0Exception {
+        when(mikvahUserService.getUser(SomeUserId)).thenThrow(new Auth0Exception("Purposely thrown from test."));
+
+        assertThat(subject.isAdmin(authenticated())).isFalse();
+        assertThat(subject.isAdmin(null)).isFalse();
+    }
+
+    private static TestingAuthenticationToken authenticated() {
+        final TestingAuthenticationToken authentication = new TestingAuthenticationToken(SomeUserId, null);
+        authentication.setAuthenticated(true);
+        return authentication;
+    }
+}
@@ -0,0 +1,39 @@
+package org.lamikvah.website;
+
+import org.junit.jupiter.api.Test;
+import org.lamikvah.website.WebSocketConfiguration.RejectTopicSendsInterceptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WebSocketConfigurationTest {
+    private static final String AvailabilityTopic = "/topic/availability";
+
+    private final RejectTopicSendsInterceptor subject = new RejectTopicSendsInterceptor();
+
+    @Test
+    void shouldRejectClientsSendingToTopics() {
+        final Message<byte[]> send = stompMessage(StompCommand.SEND, AvailabilityTopic);
+
+        assertThatThrownBy(() -> subject.preSend(send, null)).isInstanceOf(MessageDeliveryException.class);
+    }
+
+    @Test
+    void shouldLetClientsSubscribeToTopics() {
+        final Message<byte[]> subscribe = stompMessage(StompCommand.SUBSCRIBE, AvailabilityTopic);
+
+        assertThat(subject.preSend(subscribe, null)).isSameAs(subscribe);
+    }
+
+    private static Message<byte[]> stompMessage(final StompCommand command, final String destination) {
+        final StompHeaderAccessor headers = StompHeaderAccessor.create(command);
+        headers.setDestination(destination);
+        headers.setSubscriptionId("some-subscription");
+        return MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders());
+    }
+}
@@ -9,6 +9,7 @@ import org.lamikvah.website.data.AdminAppointmentView;
 import org.lamikvah.website.data.AppointmentsViewRequest;
 import org.lamikvah.website.data.MikvahUser;
 import org.lamikvah.website.service.AppointmentService;
+import org.lamikvah.website.service.DailyHoursCreationService;
 import org.lamikvah.website.service.MikvahUserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
@@ -26,6 +27,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -39,6 +41,8 @@ class AttendentsControllerTest {
     private AppointmentService appointmentService;
     @MockBean
     private MikvahUserService mikvahUserService;
+    @MockBean
+    private DailyHoursCreationService dailyHoursCreationService;
 
     @Autowired
     private ObjectMapper objectMapper;
@@ -105,4 +109,19 @@ class AttendentsControllerTest {
         assertThat(jsonResponse.parseObject(response.getContentAsString()))
                 .containsExactly(appointment2, appointment1, appointment3);
     }
+
+    @Test
+    @WithMockUser(username = SomeUserId)
+    public void recalculateHoursShouldReturnBadRequestWithoutAFromDate() throws Exception {
+        when(mikvahUserService.getUser(SomeUserId)).thenReturn(MikvahUser.builder().admin(true).build());
+
+        mvc.perform(MockMvcRequestBuilders
+                .post("/admin-recalculate-hours")
+                .content("{}")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andReturn();
+
+        verifyNoInteractions(dailyHoursCreationService);
+    }
 }
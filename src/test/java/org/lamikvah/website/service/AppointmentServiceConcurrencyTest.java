@@ -0,0 +1,123 @@
+package org.lamikvah.website.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lamikvah.website.dao.AppointmentInventoryRepository;
+import org.lamikvah.website.dao.AppointmentSlotRepository;
+import org.lamikvah.website.dao.DailyHoursRepository;
+import org.lamikvah.website.dao.MikvahUserRepository;
+import org.lamikvah.website.dao.ReservationHistoryLogRepository;
+import org.lamikvah.website.data.AppointmentRequest;
+import org.lamikvah.website.data.AppointmentSlot;
+import org.lamikvah.website.data.AppointmentSlotDto;
+import org.lamikvah.website.data.DailyHours;
+import org.lamikvah.website.data.MikvahUser;
+import org.lamikvah.website.data.RoomType;
+import org.lamikvah.website.exception.AppointmentCreationException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Date;
+import java.sql.Time;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class AppointmentServiceConcurrencyTest {
+    // Two baths start right at opening
+    private static final int OpenSlots = 2;
+    private static final int ConcurrentBookings = 20;
+    private static final LocalDate SomeTuesday = LocalDate.now().with(TemporalAdjusters.next(DayOfWeek.TUESDAY));
+    private static final LocalDateTime SomeTime = LocalDateTime.of(SomeTuesday, LocalTime.of(20, 0));
+
+    @MockBean
+    private EmailService emailService;
+
+    @Autowired private AppointmentService subject;
+    @Autowired private AppointmentSlotRepository appointmentSlotRepository;
+    @Autowired private AppointmentInventoryRepository appointmentInventoryRepository;
+    @Autowired private MikvahUserRepository userRepository;
+    @Autowired private ReservationHistoryLogRepository reservationHistoryLogRepository;
+    @Autowired private DailyHoursRepository dailyHoursRepository;
+    @Autowired private DailyHoursService dailyHoursService;
+
+    private final List<MikvahUser> users = new ArrayList<>();
+
+    @BeforeEach
+    public void setup() {
+        dailyHoursRepository.save(new DailyHours(Date.valueOf(SomeTuesday), Time.valueOf(SomeTime.toLocalTime()),
+                Time.valueOf(LocalTime.of(23, 0)), false));
+        dailyHoursService.evict(SomeTuesday);
+        for (int i = 0; i < ConcurrentBookings; i++) {
+            // Members are never charged, so this does not reach Stripe
+            users.add(userRepository.save(MikvahUser.builder().member(true).email("concurrent-" + i + "@example.com").build()));
+        }
+    }
+
+    @AfterEach
+    public void cleanup() {
+        reservationHistoryLogRepository.deleteAll();
+        appointmentSlotRepository.deleteAll(appointmentSlotRepository.findByStartAndRoomType(SomeTime, RoomType.BATH));
+        appointmentInventoryRepository.findByStartAndRoomType(SomeTime, RoomType.BATH)
+                .ifPresent(appointmentInventoryRepository::delete);
+        dailyHoursRepository.deleteById(Date.valueOf(SomeTuesday));
+        dailyHoursService.evict(SomeTuesday);
+        userRepository.deleteAll(users);
+    }
+
+    @Test
+    public void parallelBookingsForOneTimeShouldEachGetADifferentSlotWithoutErrors() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(ConcurrentBookings);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<AppointmentSlotDto>> results = new ArrayList<>();
+        for (final MikvahUser user : users) {
+            results.add(executor.submit(() -> {
+                final AppointmentRequest request = new AppointmentRequest();
+                request.setTime(SomeTime);
+                request.setRoomType(RoomType.BATH);
+                start.await();
+                try {
+                    return subject.createAppointment(request, user);
+                } catch (final AppointmentCreationException e) {
+                    // Sold out, which is expected once every slot is taken
+                    return null;
+                }
+            }));
+        }
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        final List<Long> bookedSlotIds = new ArrayList<>();
+        for (final Future<AppointmentSlotDto> result : results) {
+            // Any other exception, such as a serialization failure, fails the test here
+            final AppointmentSlotDto slot = result.get();
+            if (slot != null) {
+                bookedSlotIds.add(slot.getId());
+            }
+        }
+
+        assertThat(bookedSlotIds).hasSize(OpenSlots).doesNotHaveDuplicates();
+        assertThat(appointmentSlotRepository.findByStartAndRoomType(SomeTime, RoomType.BATH))
+                .extracting(slot -> slot.getRoom().getName())
+                .containsExactlyInAnyOrder("Bath 1", "Bath 2");
+        assertThat(appointmentInventoryRepository.findByStartAndRoomType(SomeTime, RoomType.BATH))
+                .hasValueSatisfying(inventory -> assertThat(inventory.getBooked()).isEqualTo(OpenSlots));
+    }
+}
@@ -2,6 +2,8 @@ package org.lamikvah.website.service;
 
 import org.junit.jupiter.api.Test;
 import org.lamikvah.website.dao.AppointmentSlotRepository;
+import org.lamikvah.website.data.AdminAppointmentCursor;
+import org.lamikvah.website.data.AdminAppointmentRow;
 import org.lamikvah.website.data.AdminAppointmentView;
 import org.lamikvah.website.data.AppointmentSlot;
 import org.lamikvah.website.data.MikvahUser;
@@ -9,17 +11,21 @@ import org.lamikvah.website.data.RoomType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.ActiveProfiles;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.tuple;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -44,18 +50,19 @@ public class AppointmentServiceTest {
                 .lastName("another-last").email("another-email@example.com").phoneNumber("0987654321").build();
         final AppointmentSlot slot1 = new AppointmentSlot(111L,
                 LocalDateTime.of(SomeDate, LocalTime.of(1, 10)), someUser, null,
-                "some notes", RoomType.valueOf(someRoomType.toUpperCase()));
+                "some notes", RoomType.valueOf(someRoomType.toUpperCase()), null, null, null);
         final AppointmentSlot slot2 = new AppointmentSlot(222L,
                 LocalDateTime.of(SomeDate, LocalTime.of(2, 20)), anotherUser, null,
-                "another notes", RoomType.valueOf(anotherRoomType.toUpperCase()));
+                "another notes", RoomType.valueOf(anotherRoomType.toUpperCase()), null, null, null);
 
-        when(appointmentSlotRepository.findByStartBetweenOrderByStartAsc(any(), any()))
+        when(appointmentSlotRepository.findByStartBetweenAndMikvahUserIsNotNullAndHoldExpirationIsNullOrderByStartAsc(any(), any()))
                 .thenReturn(Arrays.asList(slot1, slot2));
 
         final List<AdminAppointmentView> response = subject.getAppointmentsForAdmins(SomeDate);
 
         verify(appointmentSlotRepository)
-                .findByStartBetweenOrderByStartAsc(LocalDateTime.of(SomeDate, LocalTime.MIN), LocalDateTime.of(SomeDate, LocalTime.MAX));
+                .findByStartBetweenAndMikvahUserIsNotNullAndHoldExpirationIsNullOrderByStartAsc(
+                        LocalDateTime.of(SomeDate, LocalTime.MIN), LocalDateTime.of(SomeDate, LocalTime.MAX));
         assertThat(response)
                 .extracting(AdminAppointmentView::getTitle, AdminAppointmentView::getFirstName, AdminAppointmentView::getLastName,
                         AdminAppointmentView::getEmail, AdminAppointmentView::getPhoneNumber, AdminAppointmentView::getTime,
@@ -66,4 +73,24 @@ public class AppointmentServiceTest {
                         tuple(anotherUser.getTitle(), anotherUser.getFirstName(), anotherUser.getLastName(), anotherUser.getEmail(),
                                 anotherUser.getPhoneNumber(), "2:20 AM", anotherRoomType, slot2.getNotes()));
     }
+
+    @Test
+    public void forEachAppointmentForAdminsShouldPageFromTheStartOfTheRangeAndReturnWhereItStopped() {
+        final AdminAppointmentRow first = new AdminAppointmentRow(111L, LocalDateTime.of(SomeDate, LocalTime.of(19, 0)),
+                RoomType.BATH, "some title", "some-first", "some-last", "1234567890", "some-email@example.com", null);
+        final AdminAppointmentRow second = new AdminAppointmentRow(222L, LocalDateTime.of(SomeDate, LocalTime.of(19, 30)),
+                RoomType.SHOWER, "another title", "another-first", "another-last", "0987654321",
+                "another-email@example.com", null);
+        when(appointmentSlotRepository.findBookedAfter(any(), anyLong(), any(), any()))
+                .thenReturn(Arrays.asList(first, second));
+
+        final List<AdminAppointmentRow> streamed = new ArrayList<>();
+        final Optional<AdminAppointmentCursor> next = subject.forEachAppointmentForAdmins(SomeDate, SomeDate.plusDays(6),
+                Optional.empty(), 2, streamed::add);
+
+        verify(appointmentSlotRepository).findBookedAfter(SomeDate.atStartOfDay(), 0L,
+                SomeDate.plusDays(7).atStartOfDay(), PageRequest.of(0, 2));
+        assertThat(streamed).containsExactly(first, second);
+        assertThat(next).contains(new AdminAppointmentCursor(second.getStart(), second.getId()));
+    }
 }
@@ -0,0 +1,121 @@
+package org.lamikvah.website.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.lamikvah.website.MikvahConfiguration;
+import org.lamikvah.website.dao.AppointmentInventoryRepository;
+import org.lamikvah.website.dao.DailyHoursRepository;
+import org.lamikvah.website.data.AppointmentInventory;
+import org.lamikvah.website.data.AvailableDateTimeAndRoomType;
+import org.lamikvah.website.data.DailyHours;
+import org.lamikvah.website.data.RoomType;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AvailabilityIndexTest {
+    private static final String SomeZoneId = "America/Los_Angeles";
+    private static final LocalDate Tomorrow = LocalDate.now(ZoneId.of(SomeZoneId)).plusDays(1);
+    private static final LocalDateTime SomeTime = LocalDateTime.of(Tomorrow, LocalTime.of(20, 0));
+    private static final LocalDateTime LaterTime = SomeTime.plusMinutes(30);
+
+    @Mock private AppointmentInventoryRepository appointmentInventoryRepository;
+
+    @Mock private DailyHoursRepository dailyHoursRepository;
+
+    @Mock private SlotGrid slotGrid;
+
+    @Mock private MikvahConfiguration config;
+
+    @Mock private AvailabilityBroadcaster broadcaster;
+
+    @InjectMocks private AvailabilityIndex subject;
+
+    @BeforeEach
+    public void setup() {
+        final DailyHours someHours = new DailyHours();
+        when(config.getTimeZone()).thenReturn(SomeZoneId);
+        when(config.getBookingHorizonDays()).thenReturn(14);
+        when(dailyHoursRepository.findByDayBetweenOrderByDayAsc(any(), any())).thenReturn(Arrays.asList(someHours));
+        when(slotGrid.getSlots(someHours))
+                .thenReturn(Arrays.asList(
+                        new AvailableDateTimeAndRoomType(SomeTime, RoomType.SHOWER, 1),
+                        new AvailableDateTimeAndRoomType(SomeTime, RoomType.BATH, 3),
+                        new AvailableDateTimeAndRoomType(LaterTime, RoomType.SHOWER, 2),
+                        new AvailableDateTimeAndRoomType(LaterTime, RoomType.BATH, 1)));
+        when(appointmentInventoryRepository.findByStartBetweenAndBookedGreaterThan(any(), any(), eq(0)))
+                .thenReturn(Arrays.asList(
+                        new AppointmentInventory(1L, SomeTime, RoomType.BATH, 3, 1),
+                        new AppointmentInventory(2L, LaterTime, RoomType.SHOWER, 2, 1),
+                        new AppointmentInventory(3L, LaterTime, RoomType.BATH, 1, 1)));
+        subject.rebuild();
+    }
+
+    @Test
+    void shouldReturnDistinctStartTimesAndRoomTypesInOrder() {
+        final List<AvailableDateTimeAndRoomType> times = subject.getAvailableTimes(SomeTime, LaterTime);
+
+        assertThat(times)
+                .extracting(AvailableDateTimeAndRoomType::getDateTime, AvailableDateTimeAndRoomType::getRoomType,
+                        AvailableDateTimeAndRoomType::getRemaining)
+                .containsExactly(
+                        tuple(SomeTime, RoomType.SHOWER, 1L),
+                        tuple(SomeTime, RoomType.BATH, 2L),
+                        tuple(LaterTime, RoomType.SHOWER, 1L));
+    }
+
+    @Test
+    void shouldOnlyRemoveTimeOnceEveryOpenSlotIsBooked() {
+        subject.slotBooked(SomeTime, RoomType.BATH);
+        assertThat(subject.getAvailableTimes(SomeTime, SomeTime))
+                .extracting(AvailableDateTimeAndRoomType::getRoomType, AvailableDateTimeAndRoomType::getRemaining)
+                .containsExactly(tuple(RoomType.SHOWER, 1L), tuple(RoomType.BATH, 1L));
+        verify(broadcaster).broadcast(argThat(update -> update.getDateTime().equals(SomeTime)
+                && update.getRoomType() == RoomType.BATH && update.getRemaining() == 1));
+
+        subject.slotBooked(SomeTime, RoomType.BATH);
+        assertThat(subject.getAvailableTimes(SomeTime, SomeTime))
+                .extracting(AvailableDateTimeAndRoomType::getRoomType)
+                .containsExactly(RoomType.SHOWER);
+
+        subject.slotReleased(SomeTime, RoomType.BATH);
+        assertThat(subject.getAvailableTimes(SomeTime, SomeTime))
+                .extracting(AvailableDateTimeAndRoomType::getRoomType)
+                .containsExactly(RoomType.SHOWER, RoomType.BATH);
+    }
+
+    @Test
+    void shouldExcludeTimesOutsideOfRequestedWindow() {
+        assertThat(subject.getAvailableTimes(SomeTime.plusMinutes(1), LaterTime.plusDays(1)))
+                .extracting(AvailableDateTimeAndRoomType::getDateTime)
+                .containsExactly(LaterTime);
+    }
+
+    @Test
+    void shouldOnlyChangeETagWhenAvailabilityChanges() {
+        final String eTag = subject.getETag(SomeTime, LaterTime);
+        assertThat(subject.getETag(SomeTime, LaterTime)).isEqualTo(eTag);
+        assertThat(subject.getETag(SomeTime, LaterTime.plusMinutes(1))).isEqualTo(eTag);
+        assertThat(subject.getETag(SomeTime.plusMinutes(1), LaterTime)).isNotEqualTo(eTag);
+
+        subject.slotBooked(SomeTime, RoomType.BATH);
+        assertThat(subject.getETag(SomeTime, LaterTime)).isNotEqualTo(eTag);
+    }
+}
@@ -0,0 +1,69 @@
+package org.lamikvah.website.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.lamikvah.website.MikvahConfiguration;
+import org.lamikvah.website.dao.DailyHoursRepository;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.actuate.metrics.MetricsEndpoint;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.sql.Date;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class DailyHoursServiceTest {
+    private static final String SomeZoneId = "America/Los_Angeles";
+    private static final LocalDate ThisSunday = LocalDate.now(ZoneId.of(SomeZoneId))
+            .with(TemporalAdjusters.previousOrSame(DayOfWeek.SUNDAY));
+
+    @Mock private DailyHoursRepository repo;
+
+    @Mock private MikvahConfiguration config;
+
+    @Spy private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks private DailyHoursService subject;
+
+    @Test
+    void evictingASundayShouldReloadTheWeekEndingOnIt() {
+        when(config.getTimeZone()).thenReturn(SomeZoneId);
+
+        subject.getHoursForCurrentWeek();
+        subject.evict(ThisSunday.plusWeeks(1));
+        subject.getHoursForCurrentWeek();
+
+        verify(repo, times(2)).findByDayBetweenOrderByDayAsc(Date.valueOf(ThisSunday),
+                Date.valueOf(ThisSunday.plusWeeks(1)));
+    }
+
+    @Test
+    void shouldReportCacheHitsAndMissesToTheMetricsEndpoint() {
+        subject.registerMetrics();
+
+        subject.getHoursForDay(ThisSunday);
+        subject.getHoursForDay(ThisSunday);
+        subject.getHoursForDay(ThisSunday.plusDays(1));
+
+        final MetricsEndpoint metrics = new MetricsEndpoint(meterRegistry);
+        assertThat(metrics.listNames().getNames()).contains("cache.gets");
+        assertThat(metrics.metric("cache.gets", List.of("cache:dailyHoursByDay", "result:hit")).getMeasurements())
+                .extracting(MetricsEndpoint.Sample::getValue).containsExactly(1.0);
+        assertThat(metrics.metric("cache.gets", List.of("cache:dailyHoursByDay", "result:miss")).getMeasurements())
+                .extracting(MetricsEndpoint.Sample::getValue).containsExactly(2.0);
+    }
+}
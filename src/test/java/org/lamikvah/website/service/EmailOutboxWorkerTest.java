@@ -0,0 +1,105 @@
+package org.lamikvah.website.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lamikvah.website.MikvahConfiguration;
+import org.lamikvah.website.data.OutboxEmail;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.simplejavamail.email.Email;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+
+import javax.mail.MessagingException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EmailOutboxWorkerTest {
+
+    @Mock private EmailOutboxService outbox;
+
+    @Mock private SmtpConnectionPool smtp;
+
+    private EmailOutboxWorker subject;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        subject = new EmailOutboxWorker(new MikvahConfiguration(), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(subject, "outbox", outbox);
+        ReflectionTestUtils.setField(subject, "smtp", smtp);
+    }
+
+    @AfterEach
+    public void cleanup() {
+        subject.shutdown();
+    }
+
+    @Test
+    void shouldSendToEveryRecipientAndMarkSent() throws Exception {
+        final OutboxEmail email = someEmail(1);
+        when(outbox.claimDueEmails(anyInt())).thenReturn(Collections.singletonList(email));
+
+        subject.sendDueEmails();
+
+        final ArgumentCaptor<Email> sent = ArgumentCaptor.forClass(Email.class);
+        verify(smtp).send(sent.capture());
+        assertThat(sent.getValue().getRecipients())
+                .extracting(recipient -> recipient.getName(), recipient -> recipient.getAddress())
+                .containsExactlyInAnyOrder(
+                        org.assertj.core.groups.Tuple.tuple("Some One", "someone@example.com"),
+                        org.assertj.core.groups.Tuple.tuple("Someone, Else", "else@example.com"));
+        verify(outbox).markSent(email);
+    }
+
+    @Test
+    void shouldBackOffExponentiallyWhenSendingFails() throws Exception {
+        final OutboxEmail email = someEmail(3);
+        when(outbox.claimDueEmails(anyInt())).thenReturn(Collections.singletonList(email));
+        doThrow(new MessagingException("Connection refused")).when(smtp).send(any(Email.class));
+
+        subject.sendDueEmails();
+
+        verify(outbox, never()).markSent(any());
+        verify(outbox).markFailed(eq(email), eq(Duration.ofMinutes(2)), anyString());
+    }
+
+    @Test
+    void shouldGiveUpAfterTheLastAttempt() throws Exception {
+        final OutboxEmail email = someEmail(EmailOutboxService.MAX_ATTEMPTS);
+        when(outbox.claimDueEmails(anyInt())).thenReturn(Collections.singletonList(email));
+        doThrow(new MessagingException("Connection refused")).when(smtp).send(any(Email.class));
+
+        subject.sendDueEmails();
+
+        verify(outbox, never()).markFailed(any(), any(), any());
+        verify(outbox).markGivenUp(email, "Connection refused");
+    }
+
+    private static OutboxEmail someEmail(final int attempts) {
+        return OutboxEmail.builder()
+                .id(1L)
+                .recipients("Some One <someone@example.com>, \"Someone, Else\" <else@example.com>")
+                .subject("Some Subject")
+                .textBody("Some text")
+                .htmlBody("<p>Some text</p>")
+                .created(LocalDateTime.now(Clock.systemUTC()))
+                .attempts(attempts)
+                .build();
+    }
+}
@@ -0,0 +1,55 @@
+package org.lamikvah.website.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lamikvah.website.service.EmailContexts.AppointmentConfirmation;
+import org.lamikvah.website.service.EmailContexts.CreditCardUpdate;
+import org.lamikvah.website.service.EmailTemplateRenderer.RenderedEmail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EmailTemplateRendererTest {
+
+    private EmailTemplateRenderer subject;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        subject = new EmailTemplateRenderer();
+    }
+
+    @Test
+    void shouldRenderBothVersionsOfTheConfirmationEmail() {
+        final AppointmentConfirmation context = AppointmentConfirmation.builder()
+                .appointmentSlotId(7L)
+                .fullName("Some One")
+                .startDateTime("Sunday, March, 1, 2020 at 7:30 PM")
+                .ccCharged(true)
+                .cardType("Visa")
+                .last4("4242")
+                .confirmationCode("ch_123")
+                .amount("$36.00")
+                .build();
+
+        final RenderedEmail rendered = subject.render("appointment-confirmation", context);
+
+        assertThat(rendered.getText())
+                .contains("Your appointment for Sunday, March, 1, 2020 at 7:30 PM is confirmed.")
+                .contains("Your Visa ending in 4242 was charged $36.00. The confirmation code is ch_123.");
+        assertThat(rendered.getHtml()).contains("Sunday, March, 1, 2020 at 7:30 PM", "4242");
+    }
+
+    @Test
+    void shouldNotCarryOutputOverBetweenRenders() {
+        final String first = subject.render("credit-card-update", new CreditCardUpdate(true)).getText();
+        final String second = subject.render("credit-card-update", new CreditCardUpdate(true)).getText();
+
+        assertThat(second).isEqualTo(first);
+    }
+
+    @Test
+    void shouldRejectUnknownTemplates() {
+        assertThatThrownBy(() -> subject.render("no-such-email", EmailContexts.EMPTY))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,88 @@
+package org.lamikvah.website.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lamikvah.website.dao.MembershipRepository;
+import org.lamikvah.website.dao.MikvahUserRepository;
+import org.lamikvah.website.data.Membership;
+import org.lamikvah.website.data.MikvahUser;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MembershipServiceExpiryTest {
+
+    private static final LocalDateTime SomeExpiration = LocalDateTime.of(2020, 1, 1, 0, 0);
+
+    @Mock private MembershipRepository membershipRepository;
+
+    @Mock private MikvahUserRepository userRepository;
+
+    @Mock private MikvahUserService mikvahUserService;
+
+    @Mock private EmailService emailService;
+
+    @Mock private TransactionTemplate transactionTemplate;
+
+    @InjectMocks private MembershipService subject;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(subject, "emailService", Optional.of(emailService));
+        when(transactionTemplate.execute(any()))
+                .thenAnswer(invocation -> ((TransactionCallback<Object>) invocation.getArgument(0)).doInTransaction(null));
+    }
+
+    @Test
+    void shouldEndExpiredMembershipsInBulk() {
+        final MikvahUser user = MikvahUser.builder().id(10L).auth0UserId("auth0|10").build();
+        final Membership membership = Membership.builder().id(1L).expiration(SomeExpiration).mikvahUser(user).build();
+        when(membershipRepository.findExpiredOffline(any(), any())).thenReturn(Collections.singletonList(membership));
+
+        subject.cancelOfflineSubscriptions();
+
+        verify(userRepository).endMemberships(Collections.singletonList(10L));
+        verify(membershipRepository).deleteAllByIdIn(Collections.singletonList(1L));
+        verify(emailService).sendMembershipEndedEmail(user);
+        verify(mikvahUserService).evictUsers(Collections.singletonList("auth0|10"));
+        verify(membershipRepository, never()).findExpiredOfflineAfter(any(), any(), any(Long.class), any());
+    }
+
+    @Test
+    void shouldContinueAfterTheLastMembershipOfAFullBatch() {
+        final List<Membership> fullBatch = new ArrayList<>();
+        for (long id = 1; id <= 500; id++) {
+            fullBatch.add(Membership.builder().id(id).expiration(SomeExpiration.plusMinutes(id)).build());
+        }
+        when(membershipRepository.findExpiredOffline(any(), any())).thenReturn(fullBatch);
+        when(membershipRepository.findExpiredOfflineAfter(any(), any(), any(Long.class), any()))
+                .thenReturn(Collections.emptyList());
+
+        subject.cancelOfflineSubscriptions();
+
+        verify(membershipRepository).findExpiredOfflineAfter(any(), eq(SomeExpiration.plusMinutes(500)), eq(500L),
+                any(Pageable.class));
+        verify(membershipRepository, times(1)).deleteAllByIdIn(anyCollection());
+        verify(userRepository, never()).endMemberships(anyCollection());
+    }
+}
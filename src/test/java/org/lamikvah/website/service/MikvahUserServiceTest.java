@@ -1,27 +1,39 @@
 package org.lamikvah.website.service;
 
 import com.auth0.exception.Auth0Exception;
+import com.auth0.jwt.interfaces.Claim;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.lamikvah.website.MikvahConfiguration;
 import org.lamikvah.website.dao.AppointmentSlotRepository;
 import org.lamikvah.website.dao.MembershipRepository;
 import org.lamikvah.website.dao.MikvahUserRepository;
+import org.lamikvah.website.data.CreditCard;
 import org.lamikvah.website.data.MikvahUser;
 import org.lamikvah.website.data.UserDto;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
 
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class MikvahUserServiceTest {
     private static final String SomeAuth0UserId = "some-auth0-user-id";
     private static final String SomeZoneId = "America/Los_Angeles";
+    private static final String SomeEmail = "someone@example.com";
 
     @Mock private MikvahUserRepository userRepository;
 
@@ -35,6 +47,12 @@ class MikvahUserServiceTest {
 
     @Mock private DailyHoursService dailyHoursService;
 
+    @Mock private DecodedJWT token;
+
+    @Mock private Claim email;
+
+    @Mock private Claim emailVerified;
+
     @ParameterizedTest
     @MethodSource("databaseValues")
     void shouldMapAdminProperty(boolean databaseValue) throws Auth0Exception {
@@ -42,6 +60,82 @@ class MikvahUserServiceTest {
 
         when(userRepository.getByAuth0UserId(SomeAuth0UserId)).thenReturn(Optional.of(MikvahUser.builder().admin(databaseValue).build()));
 
+        MikvahUserService subject = createSubject();
+
+        final UserDto user = subject.getUserWithCreditCardInfo(SomeAuth0UserId);
+
+        assertThat(user.isAdmin()).isEqualTo(databaseValue);
+
+    }
+
+    @Test
+    void shouldCacheUsersUntilTheyAreSaved() throws Auth0Exception {
+        MockitoAnnotations.initMocks(this);
+
+        when(userRepository.getByAuth0UserId(SomeAuth0UserId))
+                .thenReturn(Optional.of(MikvahUser.builder().auth0UserId(SomeAuth0UserId).firstName("Before").build()));
+
+        final MikvahUserService subject = createSubject();
+
+        final MikvahUser user = subject.getUser(SomeAuth0UserId);
+        user.setFirstName("Changed");
+        assertThat(subject.getUser(SomeAuth0UserId).getFirstName()).isEqualTo("Before");
+        verify(userRepository, times(1)).getByAuth0UserId(SomeAuth0UserId);
+
+        subject.saveUser(user);
+        subject.getUser(SomeAuth0UserId);
+        verify(userRepository, times(2)).getByAuth0UserId(SomeAuth0UserId);
+    }
+
+    @Test
+    void shouldTakeNewUsersEmailFromVerifiedTokenClaim() throws Auth0Exception {
+        MockitoAnnotations.initMocks(this);
+
+        when(token.getClaim("email")).thenReturn(email);
+        when(email.asString()).thenReturn(SomeEmail);
+        when(token.getClaim("email_verified")).thenReturn(emailVerified);
+        when(emailVerified.asBoolean()).thenReturn(true);
+        final TestingAuthenticationToken authentication = new TestingAuthenticationToken(SomeAuth0UserId, null);
+        authentication.setDetails(token);
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+
+        when(userRepository.getByAuth0UserId(SomeAuth0UserId)).thenReturn(Optional.empty());
+        when(userRepository.findByEmail(SomeEmail)).thenReturn(Optional.empty());
+        when(userRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        try {
+            final MikvahUser user = createSubject().getUser(SomeAuth0UserId);
+
+            assertThat(user.getEmail()).isEqualTo(SomeEmail);
+            assertThat(user.getAuth0UserId()).isEqualTo(SomeAuth0UserId);
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    @Test
+    void shouldReturnUserWithoutCardWhenStripeIsSlow() throws Auth0Exception {
+        MockitoAnnotations.initMocks(this);
+
+        when(userRepository.getByAuth0UserId(SomeAuth0UserId))
+                .thenReturn(Optional.of(MikvahUser.builder().auth0UserId(SomeAuth0UserId).member(true).build()));
+        final CountDownLatch stripeResponds = new CountDownLatch(1);
+        when(creditCardService.getCreditCard(any())).thenAnswer(invocation -> {
+            stripeResponds.await();
+            return Optional.of(CreditCard.builder().last4("4242").build());
+        });
+
+        try {
+            final UserDto user = createSubject().getUserWithCreditCardInfo(SomeAuth0UserId);
+
+            assertThat(user.isMember()).isTrue();
+            assertThat(user.getDefaultCard()).isNull();
+        } finally {
+            stripeResponds.countDown();
+        }
+    }
+
+    private MikvahUserService createSubject() {
         final MikvahConfiguration.Auth0Properties auth0Properties = new MikvahConfiguration.Auth0Properties();
         auth0Properties.setIssuer("some-issuer");
         auth0Properties.setManagementToken("some-token");
@@ -50,13 +144,8 @@ class MikvahUserServiceTest {
         config.setAuth0(auth0Properties);
         config.setTimeZone(SomeZoneId);
 
-        MikvahUserService subject = new MikvahUserService(config, userRepository, appointmentSlotRepository,
-                membershipRepository, creditCardService, emailService, dailyHoursService);
-
-        final UserDto user = subject.getUserWithCreditCardInfo(SomeAuth0UserId);
-
-        assertThat(user.isAdmin()).isEqualTo(databaseValue);
-
+        return new MikvahUserService(config, userRepository, appointmentSlotRepository,
+                membershipRepository, creditCardService, emailService, dailyHoursService, new SimpleMeterRegistry());
     }
 
     private static Collection<Boolean> databaseValues() {
@@ -0,0 +1,164 @@
+package org.lamikvah.website.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.lamikvah.website.MikvahConfiguration;
+import org.lamikvah.website.dao.AppointmentSlotRepository;
+import org.lamikvah.website.dao.DailyHoursRepository;
+import org.lamikvah.website.data.AppointmentSlot;
+import org.lamikvah.website.data.AvailableDateTimeAndRoomType;
+import org.lamikvah.website.data.DailyHours;
+import org.lamikvah.website.data.Room;
+import org.lamikvah.website.data.RoomType;
+import org.lamikvah.website.service.SlotGrid.RoomSchedule;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class OccupancyMapTest {
+    private static final String SomeZoneId = "America/Los_Angeles";
+    private static final LocalDate Tomorrow = LocalDate.now(ZoneId.of(SomeZoneId)).plusDays(1);
+    private static final LocalDateTime SomeTime = LocalDateTime.of(Tomorrow, LocalTime.of(20, 0));
+    private static final Duration BathLength = Duration.ofMinutes(75);
+    private static final Room Bath1 = room(1, RoomType.BATH);
+    private static final Room Bath2 = room(2, RoomType.BATH);
+    private static final Room Bath3 = room(3, RoomType.BATH);
+    private static final Room Shower = room(4, RoomType.SHOWER);
+
+    @Mock private AppointmentSlotRepository appointmentSlotRepository;
+
+    @Mock private DailyHoursRepository dailyHoursRepository;
+
+    @Mock private SlotGrid slotGrid;
+
+    @Mock private MikvahConfiguration config;
+
+    @InjectMocks private OccupancyMap subject;
+
+    private final List<RoomSchedule> schedules = new ArrayList<>();
+
+    @BeforeEach
+    public void setup() {
+        final DailyHours someHours = new DailyHours(java.sql.Date.valueOf(Tomorrow), null, null, false);
+        when(config.getTimeZone()).thenReturn(SomeZoneId);
+        when(config.getBookingHorizonDays()).thenReturn(14);
+        when(dailyHoursRepository.findByDayBetweenOrderByDayAsc(any(), any())).thenReturn(Arrays.asList(someHours));
+        // Two baths starting at 8:00 PM and 9:15 PM, and one at 8:05 PM and 9:20 PM
+        schedules.clear();
+        schedules.add(bath(Bath1, SomeTime, SomeTime.plus(BathLength)));
+        schedules.add(bath(Bath2, SomeTime, SomeTime.plus(BathLength)));
+        schedules.add(bath(Bath3, SomeTime.plusMinutes(5), SomeTime.plusMinutes(5).plus(BathLength)));
+        when(slotGrid.getRoomSchedules(someHours)).thenReturn(schedules);
+    }
+
+    @Test
+    void shouldOnlyBeClosedOnceEverySeatIsBooked() {
+        givenBookings(slot(SomeTime, Bath1));
+
+        assertThat(subject.isOpen(SomeTime, RoomType.BATH)).isTrue();
+
+        subject.slotBooked(slot(SomeTime, Bath2));
+        assertThat(subject.isOpen(SomeTime, RoomType.BATH)).isFalse();
+        assertThat(subject.isOpen(SomeTime, RoomType.SHOWER)).isFalse();
+
+        subject.slotReleased(slot(SomeTime, Bath1));
+        assertThat(subject.isOpen(SomeTime, RoomType.BATH)).isTrue();
+    }
+
+    @Test
+    void shouldFindTheNextOpenTimeAfterTheGivenOne() {
+        givenBookings(slot(SomeTime.plusMinutes(5), Bath3), slot(SomeTime.plus(BathLength), Bath1),
+                slot(SomeTime.plus(BathLength), Bath2));
+
+        assertThat(subject.findNextOpenStart(RoomType.BATH, SomeTime)).hasValue(SomeTime.plusMinutes(80));
+        assertThat(subject.findNextOpenStart(RoomType.BATH, SomeTime.minusMinutes(1))).hasValue(SomeTime);
+        assertThat(subject.findNextOpenStart(RoomType.SHOWER, SomeTime)).isEmpty();
+    }
+
+    @Test
+    void shouldListTheEarliestOpenTimesWithTheirOpenSeats() {
+        givenBookings(slot(SomeTime, Bath1));
+
+        assertThat(subject.findOpenStarts(RoomType.BATH, SomeTime.minusMinutes(1), 2))
+                .extracting(AvailableDateTimeAndRoomType::getDateTime, AvailableDateTimeAndRoomType::getRemaining)
+                .containsExactly(tuple(SomeTime, 1L), tuple(SomeTime.plusMinutes(5), 1L));
+        assertThat(subject.findOpenStarts(RoomType.BATH, SomeTime.minusMinutes(1), 10)).hasSize(4);
+    }
+
+    @Test
+    void shouldOnlyTakeTheRoomForTheLengthOfTheAppointment() {
+        givenBookings();
+
+        subject.slotBooked(slot(SomeTime.plusMinutes(5), Bath3));
+
+        assertThat(subject.isRoomFree(SomeTime.plusMinutes(5), Bath3.getId())).isFalse();
+        assertThat(subject.isRoomFree(SomeTime.plusMinutes(80), Bath3.getId())).isTrue();
+        assertThat(subject.isRoomFree(SomeTime, Bath1.getId())).isTrue();
+    }
+
+    @Test
+    void shouldKeepBookingsInTheirRoomsWhenTheRoomsChange() {
+        schedules.clear();
+        schedules.add(bath(Bath2, SomeTime));
+        schedules.add(bath(Bath3, SomeTime));
+        givenBookings(slot(SomeTime, Bath2));
+
+        assertThat(subject.isRoomFree(SomeTime, Bath2.getId())).isFalse();
+        assertThat(subject.isRoomFree(SomeTime, Bath3.getId())).isTrue();
+        assertThat(subject.findOpenStarts(RoomType.BATH, SomeTime.minusMinutes(1), 1))
+                .extracting(AvailableDateTimeAndRoomType::getRemaining)
+                .containsExactly(1L);
+    }
+
+    @Test
+    void shouldHandleAppointmentsThatRunPastMidnight() {
+        final LocalDateTime lateStart = LocalDateTime.of(Tomorrow, LocalTime.of(23, 40));
+        schedules.clear();
+        schedules.add(new RoomSchedule(Shower, Duration.ofMinutes(30), Duration.ofMinutes(15),
+                List.of(lateStart.minusMinutes(45), lateStart)));
+        givenBookings(slot(lateStart, Shower));
+
+        assertThat(subject.isOpen(lateStart, RoomType.SHOWER)).isFalse();
+        assertThat(subject.isOpen(lateStart.minusMinutes(45), RoomType.SHOWER)).isTrue();
+
+        subject.slotReleased(slot(lateStart, Shower));
+        assertThat(subject.isOpen(lateStart, RoomType.SHOWER)).isTrue();
+    }
+
+    private void givenBookings(final AppointmentSlot... slots) {
+        when(appointmentSlotRepository.findByStartBetweenOrderByStartAsc(any(), any())).thenReturn(Arrays.asList(slots));
+        subject.rebuild();
+    }
+
+    private static RoomSchedule bath(final Room room, final LocalDateTime... starts) {
+        return new RoomSchedule(room, BathLength, Duration.ZERO, List.of(starts));
+    }
+
+    private static Room room(final long id, final RoomType roomType) {
+        return Room.builder().id(id).roomType(roomType).build();
+    }
+
+    private static AppointmentSlot slot(final LocalDateTime start, final Room room) {
+        final AppointmentSlot slot = new AppointmentSlot();
+        slot.setStart(start);
+        slot.setRoomType(room.getRoomType());
+        slot.setRoom(room);
+        return slot;
+    }
+}
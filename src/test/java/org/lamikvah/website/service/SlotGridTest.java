@@ -0,0 +1,140 @@
+package org.lamikvah.website.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.lamikvah.website.MikvahConfiguration;
+import org.lamikvah.website.dao.RoomRepository;
+import org.lamikvah.website.data.AvailableDateTimeAndRoomType;
+import org.lamikvah.website.data.DailyHours;
+import org.lamikvah.website.data.Room;
+import org.lamikvah.website.data.RoomAvailabilityWindow;
+import org.lamikvah.website.data.RoomType;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.sql.Date;
+import java.sql.Time;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class SlotGridTest {
+    private static final String SomeZoneId = "America/Los_Angeles";
+    private static final LocalDate SomeMonday = LocalDate.now(ZoneId.of(SomeZoneId)).with(TemporalAdjusters.next(DayOfWeek.MONDAY));
+    private static final LocalDate SomeFriday = SomeMonday.with(TemporalAdjusters.next(DayOfWeek.FRIDAY));
+    private static final LocalTime Opening = LocalTime.of(20, 0);
+
+    @Mock private MikvahConfiguration config;
+
+    @Mock private DailyHoursService dailyHoursService;
+
+    @Mock private ZmanimCache zmanimCache;
+
+    @Mock private RoomRepository roomRepository;
+
+    @InjectMocks private SlotGrid subject;
+
+    private final List<Room> rooms = new ArrayList<>();
+
+    @BeforeEach
+    public void setup() {
+        when(config.getTimeZone()).thenReturn(SomeZoneId);
+        when(config.getBookingHorizonDays()).thenReturn(14);
+        when(zmanimCache.getYomTovIndex(any())).thenReturn(-1);
+        rooms.clear();
+        int position = 0;
+        for (final int offset : new int[] { 25, 25, 30, 30, 35 }) {
+            rooms.add(room(RoomType.SHOWER, ++position, offset, 30));
+        }
+        for (final int offset : new int[] { 0, 0, 5, 5, 10, 10, 10 }) {
+            rooms.add(room(RoomType.BATH, ++position, offset, 75));
+        }
+        when(roomRepository.findByActiveTrueOrderByPositionAsc()).thenReturn(rooms);
+    }
+
+    @Test
+    void shouldCountTheRoomsStartingAtEachTimeUntilClosing() {
+        final DailyHours hours = hoursFor(SomeMonday, Opening, LocalTime.of(21, 15));
+
+        assertThat(subject.getSlots(hours))
+                .extracting(AvailableDateTimeAndRoomType::getDateTime, AvailableDateTimeAndRoomType::getRoomType,
+                        AvailableDateTimeAndRoomType::getRemaining)
+                .containsExactly(
+                        tuple(at(SomeMonday, 20, 0), RoomType.BATH, 2L),
+                        tuple(at(SomeMonday, 20, 25), RoomType.SHOWER, 2L),
+                        tuple(at(SomeMonday, 20, 30), RoomType.SHOWER, 2L),
+                        tuple(at(SomeMonday, 20, 35), RoomType.SHOWER, 1L));
+    }
+
+    @Test
+    void shouldNotHaveSlotsOnFridayNight() {
+        assertThat(subject.getSlots(hoursFor(SomeFriday, Opening, LocalTime.of(23, 0)))).isEmpty();
+    }
+
+    @Test
+    void shouldOnlyHaveRoomsAtTimesOnTheGridWithinTheBookingHorizon() {
+        when(dailyHoursService.getHoursForDay(any()))
+                .thenAnswer(invocation -> Optional.of(hoursFor(invocation.getArgument(0), Opening, LocalTime.of(23, 0))));
+
+        assertThat(subject.getRooms(at(SomeMonday, 20, 0), RoomType.BATH))
+                .extracting(Room::getId).containsExactly(6L, 7L);
+        assertThat(subject.getRooms(at(SomeMonday, 20, 10), RoomType.BATH))
+                .extracting(Room::getId).containsExactly(10L, 11L, 12L);
+        assertThat(subject.getRooms(at(SomeMonday, 20, 15), RoomType.BATH)).isEmpty();
+        assertThat(subject.getRooms(at(SomeMonday, 20, 0), RoomType.SHOWER)).isEmpty();
+        assertThat(subject.getRooms(at(SomeMonday.plusWeeks(3), 20, 0), RoomType.BATH)).isEmpty();
+    }
+
+    @Test
+    void shouldLeaveTurnoverBetweenAppointmentsAndOnlyUseRoomsInTheirWindows() {
+        rooms.clear();
+        final Room showerWithTurnover = room(RoomType.SHOWER, 1, 0, 30);
+        showerWithTurnover.setTurnoverMinutes(10);
+        rooms.add(showerWithTurnover);
+        final Room lateBath = room(RoomType.BATH, 2, 0, 75);
+        lateBath.getAvailabilityWindows().add(new RoomAvailabilityWindow(null, LocalTime.of(21, 0), LocalTime.of(23, 30)));
+        lateBath.getAvailabilityWindows().add(new RoomAvailabilityWindow(SomeMonday.getDayOfWeek().plus(1),
+                LocalTime.of(20, 0), LocalTime.of(21, 0)));
+        rooms.add(lateBath);
+
+        assertThat(subject.getSlots(hoursFor(SomeMonday, Opening, LocalTime.of(22, 30))))
+                .extracting(AvailableDateTimeAndRoomType::getDateTime, AvailableDateTimeAndRoomType::getRoomType)
+                .containsExactly(
+                        tuple(at(SomeMonday, 20, 0), RoomType.SHOWER),
+                        tuple(at(SomeMonday, 20, 40), RoomType.SHOWER),
+                        tuple(at(SomeMonday, 21, 0), RoomType.BATH),
+                        tuple(at(SomeMonday, 21, 20), RoomType.SHOWER),
+                        tuple(at(SomeMonday, 22, 0), RoomType.SHOWER));
+    }
+
+    private static Room room(final RoomType roomType, final int position, final int firstStartMinutes,
+            final int durationMinutes) {
+        return Room.builder().id((long) position).roomType(roomType).position(position).firstStartMinutes(firstStartMinutes)
+                .durationMinutes(durationMinutes).active(true).build();
+    }
+
+    private static DailyHours hoursFor(final LocalDate day, final LocalTime opening, final LocalTime closing) {
+        return new DailyHours(Date.valueOf(day), Time.valueOf(opening), Time.valueOf(closing), false);
+    }
+
+    private static LocalDateTime at(final LocalDate day, final int hour, final int minute) {
+        return LocalDateTime.of(day, LocalTime.of(hour, minute));
+    }
+}
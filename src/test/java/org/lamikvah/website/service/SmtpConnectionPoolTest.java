@@ -0,0 +1,123 @@
+package org.lamikvah.website.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lamikvah.website.MikvahConfiguration;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.simplejavamail.email.Email;
+import org.simplejavamail.email.EmailBuilder;
+import org.simplejavamail.mailer.Mailer;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Properties;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SmtpConnectionPoolTest {
+
+    @Mock private Mailer mailer;
+
+    private final MikvahConfiguration config = new MikvahConfiguration();
+
+    private final Deque<Transport> connections = new ArrayDeque<>();
+
+    private SmtpConnectionPool subject;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        when(mailer.getSession()).thenReturn(Session.getInstance(new Properties()));
+        subject = new SmtpConnectionPool(mailer, config, new SimpleMeterRegistry()) {
+            @Override
+            protected Transport connect() {
+                return connections.removeFirst();
+            }
+        };
+    }
+
+    @Test
+    void shouldReuseOneConnectionForConsecutiveEmails() throws Exception {
+        final Transport transport = givenConnections(1)[0];
+
+        subject.send(someEmail());
+        subject.send(someEmail());
+
+        verify(transport, times(2)).sendMessage(any(Message.class), any(Address[].class));
+        verify(transport, times(0)).close();
+    }
+
+    @Test
+    void shouldReplaceConnectionsThatFail() throws Exception {
+        final Transport[] transports = givenConnections(2);
+        doThrow(new MessagingException("Connection reset"))
+                .when(transports[0]).sendMessage(any(Message.class), any(Address[].class));
+
+        assertThatThrownBy(() -> subject.send(someEmail())).isInstanceOf(MessagingException.class);
+        subject.send(someEmail());
+
+        verify(transports[0]).close();
+        verify(transports[1]).sendMessage(any(Message.class), any(Address[].class));
+    }
+
+    @Test
+    void shouldNotReuseConnectionsPastTheirMaxAge() throws Exception {
+        config.getSmtpPool().setMaxAge(Duration.ZERO);
+        final Transport[] transports = givenConnections(2);
+
+        subject.send(someEmail());
+        subject.send(someEmail());
+
+        verify(transports[0]).close();
+        verify(transports[1]).sendMessage(any(Message.class), any(Address[].class));
+    }
+
+    @Test
+    void shouldHealthCheckIdleConnectionsBeforeReusingThem() throws Exception {
+        config.getSmtpPool().setValidateAfterIdle(Duration.ZERO);
+        final Transport[] transports = givenConnections(2);
+        when(transports[0].isConnected()).thenReturn(false);
+
+        subject.send(someEmail());
+        Thread.sleep(1);
+        subject.send(someEmail());
+
+        verify(transports[0]).close();
+        verify(transports[1]).sendMessage(any(Message.class), any(Address[].class));
+    }
+
+    private Transport[] givenConnections(final int count) {
+        final Transport[] transports = new Transport[count];
+        for (int i = 0; i < count; i++) {
+            transports[i] = mock(Transport.class);
+            when(transports[i].isConnected()).thenReturn(true);
+        }
+        connections.addAll(Arrays.asList(transports));
+        return transports;
+    }
+
+    private static Email someEmail() {
+        return EmailBuilder.startingBlank()
+                .from("Los Angeles Mikvah Society", "mikvah@mikvah.email")
+                .to("Some One", "someone@example.com")
+                .withSubject("Some Subject")
+                .withPlainText("Some text")
+                .buildEmail();
+    }
+}
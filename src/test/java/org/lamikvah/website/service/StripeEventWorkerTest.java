@@ -0,0 +1,106 @@
+package org.lamikvah.website.service;
+
+import com.stripe.Stripe;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lamikvah.website.MikvahConfiguration;
+import org.lamikvah.website.data.InboxStripeEvent;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StripeEventWorkerTest {
+
+    private static final String SomeCustomerId = "cus_123";
+
+    @Mock private StripeEventInboxService inbox;
+
+    @Mock private MembershipService membershipService;
+
+    @Mock private EmailService emailService;
+
+    @Mock private CreditCardService creditCardService;
+
+    private StripeEventWorker subject;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        subject = new StripeEventWorker(new MikvahConfiguration(), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(subject, "inbox", inbox);
+        ReflectionTestUtils.setField(subject, "membershipService", membershipService);
+        ReflectionTestUtils.setField(subject, "emailService", emailService);
+        ReflectionTestUtils.setField(subject, "creditCardService", creditCardService);
+    }
+
+    @AfterEach
+    public void cleanup() {
+        subject.shutdown();
+    }
+
+    @Test
+    void shouldProcessEventAndMarkItProcessed() {
+        final InboxStripeEvent event = someCustomerUpdatedEvent(1);
+        when(inbox.claimDueEvents(anyInt())).thenReturn(Collections.singletonList(event));
+
+        subject.processDueEvents();
+
+        verify(creditCardService).refreshCreditCard(SomeCustomerId);
+        verify(inbox).markProcessed(event);
+    }
+
+    @Test
+    void shouldBackOffExponentiallyWhenProcessingFails() {
+        final InboxStripeEvent event = someCustomerUpdatedEvent(2);
+        when(inbox.claimDueEvents(anyInt())).thenReturn(Collections.singletonList(event));
+        when(creditCardService.refreshCreditCard(SomeCustomerId))
+                .thenThrow(new IllegalStateException("Stripe is down"));
+
+        subject.processDueEvents();
+
+        verify(inbox, never()).markProcessed(any());
+        verify(inbox).markFailed(eq(event), eq(Duration.ofMinutes(1)), anyString());
+    }
+
+    @Test
+    void shouldDeadLetterEventsThatKeepFailing() {
+        final InboxStripeEvent event = someCustomerUpdatedEvent(StripeEventInboxService.MAX_ATTEMPTS);
+        when(inbox.claimDueEvents(anyInt())).thenReturn(Collections.singletonList(event));
+        when(creditCardService.refreshCreditCard(SomeCustomerId))
+                .thenThrow(new IllegalStateException("Stripe is down"));
+
+        subject.processDueEvents();
+
+        verify(inbox).deadLetter(event, "Stripe is down");
+        verify(inbox, never()).markFailed(any(), any(), any());
+    }
+
+    private static InboxStripeEvent someCustomerUpdatedEvent(final int attempts) {
+        final String payload = "{\"id\": \"evt_123\", \"object\": \"event\", \"api_version\": \""
+                + Stripe.API_VERSION + "\", \"created\": 1580000000, \"type\": \"customer.updated\", "
+                + "\"data\": {\"object\": {\"id\": \"" + SomeCustomerId + "\", \"object\": \"customer\"}}}";
+        return InboxStripeEvent.builder()
+                .stripeEventId("evt_123")
+                .eventType("customer.updated")
+                .customerId(SomeCustomerId)
+                .payload(payload)
+                .received(LocalDateTime.now(Clock.systemUTC()))
+                .attempts(attempts)
+                .build();
+    }
+}